@@ -0,0 +1,129 @@
+package com.luca;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of each front-end phase over synthetic sources. The aux counters
+// turn per-call rates into tokens/sec (scan) and nodes/sec (parse, resolve);
+// run with -prof gc to get allocation per phase.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrontEndBenchmark {
+	@Param({ "NESTED", "CLASSES", "EXPRESSIONS", "MIXED" })
+	public SourceGenerator.Shape shape;
+
+	@Param({ "100", "1000" })
+	public int size;
+
+	private final ErrorReporter reporter = new ErrorReporter();
+	private String source;
+	private List<Token> tokens;
+	private List<Stmt> statements;
+	private int nodeCount;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Tokens {
+		public long tokens;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			tokens = 0;
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Nodes {
+		public long nodes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			nodes = 0;
+		}
+	}
+
+	@Setup
+	public void generate() {
+		source = SourceGenerator.generate(shape, size);
+		tokens = new Scanner(source, reporter).scanTokens();
+		statements = new Parser(tokens, reporter).parse();
+		new Resolver(reporter).resolve(statements);
+		if (reporter.hadError()) {
+			throw new IllegalStateException("Generated " + shape + " source does not compile.");
+		}
+		nodeCount = NodeCounter.count(statements);
+	}
+
+	@Benchmark
+	public Object scan(Tokens counter) {
+		List<Token> scanned = new Scanner(source, reporter).scanTokens();
+		counter.tokens += scanned.size();
+		return scanned;
+	}
+
+	@Benchmark
+	public Object parse(Nodes counter) {
+		List<Stmt> parsed = new Parser(tokens, reporter).parse();
+		counter.nodes += nodeCount;
+		return parsed;
+	}
+
+	@Benchmark
+	public Object resolve(Nodes counter) {
+		new Resolver(reporter).resolve(statements);
+		counter.nodes += nodeCount;
+		return statements;
+	}
+
+	@Benchmark
+	public Object frontEnd(Tokens tokenCounter, Nodes nodeCounter) {
+		List<Token> scanned = new Scanner(source, reporter).scanTokens();
+		List<Stmt> parsed = new Parser(scanned, reporter).parse();
+		new Resolver(reporter).resolve(parsed);
+		tokenCounter.tokens += scanned.size();
+		nodeCounter.nodes += nodeCount;
+		return parsed;
+	}
+
+	// Same work with the parser pulling tokens from the scanner as it goes,
+	// never holding the token list.
+	@Benchmark
+	public Object streamingFrontEnd(Tokens tokenCounter, Nodes nodeCounter) {
+		List<Stmt> parsed = new Parser(new Scanner(source, reporter), reporter).parse();
+		new Resolver(reporter).resolve(parsed);
+		tokenCounter.tokens += tokens.size();
+		nodeCounter.nodes += nodeCount;
+		return parsed;
+	}
+
+	// Scans into a packed TokenBuffer first; the parser only materializes the
+	// Tokens it keeps.
+	@Benchmark
+	public Object bufferedFrontEnd(Tokens tokenCounter, Nodes nodeCounter) {
+		TokenBuffer buffer = new Scanner(source, reporter).scanBuffer();
+		List<Stmt> parsed = new Parser(buffer, reporter).parse();
+		new Resolver(reporter).resolve(parsed);
+		tokenCounter.tokens += buffer.size();
+		nodeCounter.nodes += nodeCount;
+		return parsed;
+	}
+}
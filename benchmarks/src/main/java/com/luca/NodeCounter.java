@@ -0,0 +1,135 @@
+package com.luca;
+
+import java.util.List;
+
+// Counts the AST nodes produced by the parser, for reporting nodes/sec.
+class NodeCounter implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+	static int count(List<Stmt> statements) {
+		return new NodeCounter().countAll(statements);
+	}
+
+	private int countAll(List<? extends Stmt> statements) {
+		int count = 0;
+		for (Stmt statement : statements) {
+			count += count(statement);
+		}
+		return count;
+	}
+
+	private int count(Stmt stmt) {
+		return stmt == null ? 0 : stmt.accept(this);
+	}
+
+	private int count(Expr expr) {
+		return expr == null ? 0 : expr.accept(this);
+	}
+
+	@Override
+	public Integer visitBlockStmt(Stmt.Block stmt) {
+		return 1 + countAll(stmt.statements);
+	}
+
+	@Override
+	public Integer visitBreakStmt(Stmt.Break stmt) {
+		return 1;
+	}
+
+	@Override
+	public Integer visitClassStmt(Stmt.Class stmt) {
+		return 1 + countAll(stmt.methods);
+	}
+
+	@Override
+	public Integer visitContinueStmt(Stmt.Continue stmt) {
+		return 1;
+	}
+
+	@Override
+	public Integer visitExpressionStmt(Stmt.Expression stmt) {
+		return 1 + count(stmt.expression);
+	}
+
+	@Override
+	public Integer visitFunctionStmt(Stmt.Function stmt) {
+		return 1 + countAll(stmt.body);
+	}
+
+	@Override
+	public Integer visitIfStmt(Stmt.If stmt) {
+		return 1 + count(stmt.condition) + count(stmt.thenBranch) + count(stmt.elseBranch);
+	}
+
+	@Override
+	public Integer visitPrintStmt(Stmt.Print stmt) {
+		return 1 + count(stmt.expression);
+	}
+
+	@Override
+	public Integer visitReturnStmt(Stmt.Return stmt) {
+		return 1 + count(stmt.value);
+	}
+
+	@Override
+	public Integer visitVarStmt(Stmt.Var stmt) {
+		return 1 + count(stmt.initializer);
+	}
+
+	@Override
+	public Integer visitWhileStmt(Stmt.While stmt) {
+		return 1 + count(stmt.condition) + count(stmt.body) + count(stmt.increment);
+	}
+
+	@Override
+	public Integer visitAssignExpr(Expr.Assign expr) {
+		return 1 + count(expr.value);
+	}
+
+	@Override
+	public Integer visitBinaryExpr(Expr.Binary expr) {
+		return 1 + count(expr.left) + count(expr.right);
+	}
+
+	@Override
+	public Integer visitCallExpr(Expr.Call expr) {
+		int count = 1 + count(expr.callee);
+		for (Expr argument : expr.arguments) {
+			count += count(argument);
+		}
+		return count;
+	}
+
+	@Override
+	public Integer visitGetExpr(Expr.Get expr) {
+		return 1 + count(expr.object);
+	}
+
+	@Override
+	public Integer visitGroupingExpr(Expr.Grouping expr) {
+		return 1 + count(expr.expression);
+	}
+
+	@Override
+	public Integer visitLiteralExpr(Expr.Literal expr) {
+		return 1;
+	}
+
+	@Override
+	public Integer visitLogicalExpr(Expr.Logical expr) {
+		return 1 + count(expr.left) + count(expr.right);
+	}
+
+	@Override
+	public Integer visitSetExpr(Expr.Set expr) {
+		return 1 + count(expr.object) + count(expr.value);
+	}
+
+	@Override
+	public Integer visitUnaryExpr(Expr.Unary expr) {
+		return 1 + count(expr.right);
+	}
+
+	@Override
+	public Integer visitVariableExpr(Expr.Variable expr) {
+		return 1;
+	}
+}
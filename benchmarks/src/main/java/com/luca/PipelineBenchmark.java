@@ -0,0 +1,111 @@
+package com.luca;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of a chain of tasks joined by channels: a producer task sends
+// ITEMS numbers into the first channel, each stage task adds one and passes
+// it on, and the script's own thread sums what comes out of the last. The
+// aux counter turns runs/sec into items/sec; every item crosses stages + 1
+// channels.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+	private static final int ITEMS = 10000;
+	private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+	@Param({ "1", "4", "16" })
+	public int stages;
+
+	@Param({ "1", "64" })
+	public int capacity;
+
+	private Program program;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Items {
+		public long items;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			items = 0;
+		}
+	}
+
+	@Setup
+	public void compile() throws LucaException {
+		program = Program.compile(source(stages, capacity));
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new Context(new PrintStream(output, true, StandardCharsets.UTF_8)).run(program);
+		double expected = (double) ITEMS * (ITEMS - 1) / 2 + (double) stages * ITEMS;
+		if (Double.parseDouble(output.toString(StandardCharsets.UTF_8).strip()) != expected) {
+			throw new IllegalStateException("Pipeline summed to " + output + ", expected " + expected + ".");
+		}
+	}
+
+	@Benchmark
+	public Object pipeline(Items counter) throws LucaException {
+		Context context = new Context(discard);
+		context.run(program);
+		counter.items += ITEMS;
+		return context;
+	}
+
+	static String source(int stages, int capacity) {
+		return String.join("\n",
+						"func stage(input, output) {",
+						"  func run() {",
+						"    var value = receive(input);",
+						"    while (value != nil) {",
+						"      send(output, value + 1);",
+						"      value = receive(input);",
+						"    }",
+						"    close(output);",
+						"  }",
+						"  return spawn(run);",
+						"}",
+						"var first = channel(" + capacity + ");",
+						"var input = first;",
+						"for (var i = 0; i < " + stages + "; i = i + 1) {",
+						"  var output = channel(" + capacity + ");",
+						"  stage(input, output);",
+						"  input = output;",
+						"}",
+						"func produce() {",
+						"  for (var i = 0; i < " + ITEMS + "; i = i + 1) { send(first, i); }",
+						"  close(first);",
+						"}",
+						"spawn(produce);",
+						"var sum = 0;",
+						"var value = receive(input);",
+						"while (value != nil) {",
+						"  sum = sum + value;",
+						"  value = receive(input);",
+						"}",
+						"print sum;",
+						"");
+	}
+}
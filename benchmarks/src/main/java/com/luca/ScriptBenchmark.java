@@ -0,0 +1,177 @@
+package com.luca;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// End-to-end regression runner for the script corpus in benchmarks/scripts.
+// Every iteration scans, parses, optimizes, resolves and runs a script on a fresh
+// backend, so the numbers cover the whole pipeline a `luca` invocation pays
+// for. Results can be saved as a baseline and later runs compared against it:
+//
+//   java -cp benchmarks/target/benchmarks.jar com.luca.ScriptBenchmark \
+//       [--vm | --nodes | --closures] [--warmup N] [--iterations N] \
+//       [--baseline file] [--threshold percent] [--save file] [scripts dir]
+//
+// Exits with 1 when a script falls more than the threshold below its baseline.
+public class ScriptBenchmark {
+	private static final com.sun.management.ThreadMXBean threads =
+					(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static Luca.Backend backend = Luca.Backend.INTERPRETER;
+	private static int warmup = 3;
+	private static int iterations = 5;
+	private static double threshold = 10.0;
+	private static Path baselineFile = null;
+	private static Path saveFile = null;
+	private static Path scripts = Paths.get("benchmarks", "scripts");
+	// scripts print; their output isn't part of the measurement
+	private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+	// stands in for System.out while scripts run, since every backend must
+	// print to the stream the Program was run with
+	private static final PrintStream leak = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+			throw new IllegalStateException("Script printed to System.out instead of the stream it was run with.");
+		}
+	});
+
+	private static class Result {
+		final String name;
+		final double opsPerSecond;
+		final long bytesPerOp;
+
+		Result(String name, double opsPerSecond, long bytesPerOp) {
+			this.name = name;
+			this.opsPerSecond = opsPerSecond;
+			this.bytesPerOp = bytesPerOp;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+				case "--vm": backend = Luca.Backend.VM; break;
+				case "--nodes": backend = Luca.Backend.NODES; break;
+				case "--closures": backend = Luca.Backend.CLOSURES; break;
+				case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+				case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+				case "--threshold": threshold = Double.parseDouble(args[++i]); break;
+				case "--baseline": baselineFile = Paths.get(args[++i]); break;
+				case "--save": saveFile = Paths.get(args[++i]); break;
+				default: scripts = Paths.get(args[i]);
+			}
+		}
+
+		List<Path> files;
+		try (Stream<Path> listing = Files.list(scripts)) {
+			files = listing.filter(path -> path.toString().endsWith(".luca")).sorted().collect(Collectors.toList());
+		}
+
+		Map<String, Double> baseline = baselineFile == null ? Map.of() : readBaseline(baselineFile);
+		List<Result> results = new ArrayList<>();
+		boolean regressed = false;
+
+		System.out.printf("%-20s %12s %14s %10s%n", "script", "ops/sec", "bytes/op", "baseline");
+		for (Path file : files) {
+			Result result = measure(file);
+			results.add(result);
+
+			String comparison = "";
+			Double expected = baseline.get(result.name);
+			if (expected != null) {
+				double change = (result.opsPerSecond - expected) / expected * 100.0;
+				comparison = String.format("%+.1f%%", change);
+				if (change < -threshold) {
+					comparison += " REGRESSION";
+					regressed = true;
+				}
+			}
+			System.out.printf("%-20s %12.3f %14d %10s%n", result.name, result.opsPerSecond, result.bytesPerOp, comparison);
+		}
+
+		if (saveFile != null) {
+			writeBaseline(saveFile, results);
+		}
+		if (regressed) {
+			System.out.println("Slower than baseline by more than " + threshold + "%.");
+			System.exit(1);
+		}
+	}
+
+	private static Result measure(Path file) throws IOException {
+		String name = file.getFileName().toString().replaceFirst("\\.luca$", "");
+		String source = Files.readString(file, StandardCharsets.UTF_8);
+
+		PrintStream stdout = System.out;
+		System.setOut(leak);
+		long elapsed;
+		long allocated;
+		try {
+			for (int i = 0; i < warmup; ++i) {
+				run(name, source);
+			}
+
+			long threadId = Thread.currentThread().getId();
+			allocated = threads.getThreadAllocatedBytes(threadId);
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i) {
+				run(name, source);
+			}
+			elapsed = System.nanoTime() - start;
+			allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+		} finally {
+			System.setOut(stdout);
+		}
+
+		return new Result(name, iterations / (elapsed / 1e9), allocated / iterations);
+	}
+
+	private static void run(String name, String source) {
+		Program program;
+		try {
+			program = Program.compile(source, backend);
+		} catch (LucaException e) {
+			throw new IllegalStateException(name + " does not compile.", e);
+		}
+
+		try {
+			program.run(discard);
+		} catch (LucaException e) {
+			throw new IllegalStateException(name + " failed at runtime.", e);
+		}
+	}
+
+	// One "name ops/sec" pair per line; '#' starts a comment.
+	private static Map<String, Double> readBaseline(Path file) throws IOException {
+		Map<String, Double> baseline = new LinkedHashMap<>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			line = line.strip();
+			if (line.isEmpty() || line.startsWith("#")) { continue; }
+
+			String[] fields = line.split("\\s+");
+			baseline.put(fields[0], Double.parseDouble(fields[1]));
+		}
+		return baseline;
+	}
+
+	private static void writeBaseline(Path file, List<Result> results) throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add("# " + backend.name().toLowerCase() + " backend, " + warmup + " warmup, " + iterations + " measured iterations");
+		for (Result result : results) {
+			lines.add(String.format("%s %.3f", result.name, result.opsPerSecond));
+		}
+		Files.write(file, lines, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,110 @@
+package com.luca;
+
+// Produces synthetic Luca programs for the front-end benchmarks. Each shape
+// stresses a different part of the scanner, parser and resolver; size is the
+// number of top-level units, so source length grows linearly with it.
+public class SourceGenerator {
+	public enum Shape { NESTED, CLASSES, EXPRESSIONS, MIXED }
+
+	private static final int NESTING_DEPTH = 24;
+	private static final int METHODS_PER_CLASS = 8;
+	private static final int CHAIN_LENGTH = 48;
+
+	private final StringBuilder out = new StringBuilder();
+	private int indent = 0;
+
+	static String generate(Shape shape, int size) {
+		SourceGenerator generator = new SourceGenerator();
+		for (int unit = 0; unit < size; ++unit) {
+			switch (shape) {
+				case NESTED: generator.nested(unit); break;
+				case CLASSES: generator.klass(unit); break;
+				case EXPRESSIONS: generator.expressions(unit); break;
+				default:
+					switch (unit % 3) {
+						case 0: generator.nested(unit); break;
+						case 1: generator.klass(unit); break;
+						default: generator.expressions(unit);
+					}
+			}
+		}
+		return generator.out.toString();
+	}
+
+	// A function whose body nests blocks, ifs and loops NESTING_DEPTH deep, each
+	// level declaring a local that reads the one from the enclosing scope.
+	private void nested(int unit) {
+		line("func nested" + unit + "(n) {");
+		++indent;
+		line("var v0 = n;");
+		for (int depth = 1; depth <= NESTING_DEPTH; ++depth) {
+			switch (depth % 3) {
+				case 0: line("{"); break;
+				case 1: line("if (v" + (depth - 1) + " > " + depth + ") {"); break;
+				default: line("while (v" + (depth - 1) + " < " + depth + ") {");
+			}
+			++indent;
+			line("var v" + depth + " = v" + (depth - 1) + " + " + depth + ";");
+		}
+		line("print v" + NESTING_DEPTH + ";");
+		for (int depth = NESTING_DEPTH; depth >= 1; --depth) {
+			if (depth % 3 == 2) { line("v" + (depth - 1) + " = v" + (depth - 1) + " + 1;"); }
+			--indent;
+			line("}");
+		}
+		line("return v0;");
+		--indent;
+		line("}");
+	}
+
+	private void klass(int unit) {
+		line("class Class" + unit + " {");
+		++indent;
+		for (int method = 0; method < METHODS_PER_CLASS; ++method) {
+			line("method" + method + "(a, b, c) {");
+			++indent;
+			line("var sum = a + b * c - " + method + ";");
+			line("for (var i = 0; i < sum; i = i + 1) {");
+			++indent;
+			line("if (i == b or i == c) { return i; }");
+			--indent;
+			line("}");
+			line("return \"method" + method + "\";");
+			--indent;
+			line("}");
+		}
+		--indent;
+		line("}");
+		line("var instance" + unit + " = Class" + unit + "();");
+		line("instance" + unit + ".field = instance" + unit + ".method0(1, 2, 3);");
+	}
+
+	// Long left-associative chains mixing every binary precedence level, calls,
+	// groupings and logical operators.
+	private void expressions(int unit) {
+		StringBuilder chain = new StringBuilder("var chain" + unit + " = " + unit);
+		String[] operators = { " + ", " - ", " * ", " / " };
+		for (int term = 0; term < CHAIN_LENGTH; ++term) {
+			chain.append(operators[term % operators.length]);
+			switch (term % 4) {
+				case 0: chain.append(term).append(".5"); break;
+				case 1: chain.append("(").append(term).append(" - clock())"); break;
+				case 2: chain.append("-").append(term); break;
+				default: chain.append("(").append(term).append(" * ").append(term + 1).append(")");
+			}
+		}
+		line(chain.append(";").toString());
+
+		StringBuilder condition = new StringBuilder("var test" + unit + " = chain" + unit + " > 0");
+		for (int term = 0; term < CHAIN_LENGTH / 4; ++term) {
+			condition.append(term % 2 == 0 ? " and " : " or ");
+			condition.append("chain").append(unit).append(term % 2 == 0 ? " != " : " <= ").append(term);
+		}
+		line(condition.append(";").toString());
+		line("print \"chain\" == \"chain\" and test" + unit + ";");
+	}
+
+	private void line(String text) {
+		out.append("\t".repeat(indent)).append(text).append('\n');
+	}
+}
@@ -0,0 +1,165 @@
+package com.luca;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Resolved ASTs saved to disk so a script that hasn't changed skips scanning,
+// parsing, resolving and optimizing. Entries are named after the SHA-256 of
+// the source, so an edited script simply misses and gets a new entry. The
+// file repeats the hash in its header, with the versions of the format and of
+// each stage that produced the AST, followed by a CRC32 of the encoded AST. An entry whose header doesn't match, whose
+// checksum is wrong, or that AstReader rejects is treated as a miss.
+//
+// Entries live in $LUCA_CACHE_DIR, or ~/.cache/luca when that isn't set.
+class AstCache {
+	private static final int MAGIC = 0x4C554341; // "LUCA"
+	// bump whenever AstWriter's encoding, a serialized node or this header changes
+	static final int FORMAT_VERSION = 4;
+	// An entry holds what the front end made of a source, so it's only good
+	// for the same Parser, Resolver and Optimizer; each keeps its own version.
+	private static final int[] VERSIONS = {FORMAT_VERSION, Parser.VERSION, Resolver.VERSION, Optimizer.VERSION};
+
+	// node tags, shared by AstWriter and AstReader
+	static final byte NONE = -1;
+
+	static final byte BLOCK = 0;
+	static final byte BREAK = 1;
+	static final byte CLASS = 2;
+	static final byte CONTINUE = 3;
+	static final byte EXPRESSION = 4;
+	static final byte FUNCTION = 5;
+	static final byte IF = 6;
+	static final byte PRINT = 7;
+	static final byte RETURN = 8;
+	static final byte VAR = 9;
+	static final byte WHILE = 10;
+
+	static final byte ASSIGN = 0;
+	static final byte BINARY = 1;
+	static final byte CALL = 2;
+	static final byte GET = 3;
+	static final byte GROUPING = 4;
+	static final byte LITERAL = 5;
+	static final byte LOGICAL = 6;
+	static final byte SET = 7;
+	static final byte UNARY = 8;
+	static final byte VARIABLE = 9;
+
+	static final byte NIL_VALUE = 0;
+	static final byte FALSE_VALUE = 1;
+	static final byte TRUE_VALUE = 2;
+	static final byte NUMBER_VALUE = 3;
+	static final byte STRING_VALUE = 4;
+
+	private final Path entry;
+	private final byte[] hash;
+
+	private AstCache(Path entry, byte[] hash) {
+		this.entry = entry;
+		this.hash = hash;
+	}
+
+	// The caller compiles from the same bytes on a miss, so the entry stored
+	// is always the AST of the source it's named after.
+	static AstCache forSource(ByteBuffer source) {
+		byte[] hash = hash(source);
+		return new AstCache(directory().resolve(hex(hash) + ".ast"), hash);
+	}
+
+	private static Path directory() {
+		String configured = System.getenv("LUCA_CACHE_DIR");
+		if (configured != null) {
+			return Paths.get(configured);
+		}
+		return Paths.get(System.getProperty("user.home"), ".cache", "luca");
+	}
+
+	private static byte[] hash(ByteBuffer source) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(source.duplicate());
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JVM ships SHA-256
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder out = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			out.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return out.toString();
+	}
+
+	// Returns null on a miss.
+	List<Stmt> load() {
+		if (!Files.isRegularFile(entry)) { return null; }
+
+		try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+			ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (bytes.getInt() != MAGIC) { return null; }
+			for (int version : VERSIONS) {
+				if (bytes.getInt() != version) { return null; }
+			}
+
+			byte[] stored = new byte[hash.length];
+			bytes.get(stored);
+			if (!Arrays.equals(stored, hash)) { return null; }
+
+			int checksum = bytes.getInt();
+			if (checksum != checksum(bytes.slice())) { return null; }
+
+			return new AstReader(bytes).read();
+		} catch (IOException | RuntimeException e) {
+			// whatever the reader tripped over, the entry is unusable
+			return null;
+		}
+	}
+
+	private static int checksum(ByteBuffer ast) {
+		CRC32 crc = new CRC32();
+		crc.update(ast);
+		return (int) crc.getValue();
+	}
+
+	// Best effort: a cache that can't be written just stays cold. The entry is
+	// written under a temporary name and renamed into place, so concurrent
+	// runs of the same script never read a partial file.
+	void store(List<Stmt> statements) {
+		try {
+			byte[] ast = new AstWriter().write(statements);
+			ByteBuffer header = ByteBuffer.allocate((VERSIONS.length + 2) * Integer.BYTES + hash.length);
+			header.putInt(MAGIC);
+			for (int version : VERSIONS) {
+				header.putInt(version);
+			}
+			header.put(hash).putInt(checksum(ByteBuffer.wrap(ast)));
+
+			Files.createDirectories(entry.getParent());
+			Path temporary = Files.createTempFile(entry.getParent(), "ast", ".tmp");
+			try {
+				try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+					channel.write(header.flip());
+					channel.write(ByteBuffer.wrap(ast));
+				}
+				Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		} catch (IOException e) {
+			// leave the cache cold
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.luca;
+
+import java.util.List;
+
+// Renders the AST as indented s-expressions, one statement per line; used
+// by --dump-ast to show what the Optimizer produced.
+class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
+	private int indent = 0;
+
+	String print(List<Stmt> statements) {
+		StringBuilder out = new StringBuilder();
+		for (Stmt statement : statements) {
+			out.append(print(statement)).append('\n');
+		}
+		return out.toString();
+	}
+
+	private String print(Stmt stmt) {
+		return "  ".repeat(indent) + stmt.accept(this);
+	}
+
+	private String print(Expr expr) {
+		return expr.accept(this);
+	}
+
+	private String body(String head, List<? extends Stmt> statements) {
+		StringBuilder out = new StringBuilder("(").append(head);
+		++indent;
+		for (Stmt statement : statements) {
+			out.append('\n').append(print(statement));
+		}
+		--indent;
+		return out.append(')').toString();
+	}
+
+	private String nested(Stmt stmt) {
+		++indent;
+		String printed = "\n" + print(stmt);
+		--indent;
+		return printed;
+	}
+
+	private String parenthesize(String name, Expr... exprs) {
+		StringBuilder out = new StringBuilder("(").append(name);
+		for (Expr expr : exprs) {
+			out.append(' ').append(print(expr));
+		}
+		return out.append(')').toString();
+	}
+
+	@Override
+	public String visitBlockStmt(Stmt.Block stmt) {
+		return body("block", stmt.statements);
+	}
+
+	@Override
+	public String visitBreakStmt(Stmt.Break stmt) {
+		return "(break)";
+	}
+
+	@Override
+	public String visitClassStmt(Stmt.Class stmt) {
+		return body("class " + stmt.name.lexeme(), stmt.methods);
+	}
+
+	@Override
+	public String visitContinueStmt(Stmt.Continue stmt) {
+		return "(continue)";
+	}
+
+	@Override
+	public String visitExpressionStmt(Stmt.Expression stmt) {
+		return parenthesize(";", stmt.expression);
+	}
+
+	@Override
+	public String visitFunctionStmt(Stmt.Function stmt) {
+		StringBuilder head = new StringBuilder("func ").append(stmt.name.lexeme()).append(" (");
+		for (int i = 0; i < stmt.params.size(); ++i) {
+			if (i > 0) { head.append(' '); }
+			head.append(stmt.params.get(i).lexeme());
+		}
+		if (stmt.body == null) {
+			return "(" + head.append(") ...)");
+		}
+		return body(head.append(')').toString(), stmt.body);
+	}
+
+	@Override
+	public String visitIfStmt(Stmt.If stmt) {
+		String printed = "(if " + print(stmt.condition) + nested(stmt.thenBranch);
+		if (stmt.elseBranch != null) {
+			printed += nested(stmt.elseBranch);
+		}
+		return printed + ")";
+	}
+
+	@Override
+	public String visitPrintStmt(Stmt.Print stmt) {
+		return parenthesize("print", stmt.expression);
+	}
+
+	@Override
+	public String visitReturnStmt(Stmt.Return stmt) {
+		return stmt.value == null ? "(return)" : parenthesize("return", stmt.value);
+	}
+
+	@Override
+	public String visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer == null) {
+			return "(var " + stmt.name.lexeme() + ")";
+		}
+		return parenthesize("var " + stmt.name.lexeme(), stmt.initializer);
+	}
+
+	@Override
+	public String visitWhileStmt(Stmt.While stmt) {
+		String head = "(while " + print(stmt.condition);
+		if (stmt.increment != null) {
+			head += " " + print(stmt.increment);
+		}
+		return head + nested(stmt.body) + ")";
+	}
+
+	@Override
+	public String visitAssignExpr(Expr.Assign expr) {
+		return parenthesize("= " + expr.name.lexeme(), expr.value);
+	}
+
+	@Override
+	public String visitBinaryExpr(Expr.Binary expr) {
+		return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
+	}
+
+	@Override
+	public String visitCallExpr(Expr.Call expr) {
+		Expr[] parts = new Expr[expr.arguments.size() + 1];
+		parts[0] = expr.callee;
+		for (int i = 0; i < expr.arguments.size(); ++i) {
+			parts[i + 1] = expr.arguments.get(i);
+		}
+		return parenthesize("call", parts);
+	}
+
+	@Override
+	public String visitGetExpr(Expr.Get expr) {
+		return parenthesize("." + expr.name.lexeme(), expr.object);
+	}
+
+	@Override
+	public String visitGroupingExpr(Expr.Grouping expr) {
+		return parenthesize("group", expr.expression);
+	}
+
+	@Override
+	public String visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value instanceof String) {
+			return "\"" + expr.value + "\"";
+		}
+		return Interpreter.stringify(expr.value);
+	}
+
+	@Override
+	public String visitLogicalExpr(Expr.Logical expr) {
+		return parenthesize(expr.operator.lexeme(), expr.left, expr.right);
+	}
+
+	@Override
+	public String visitSetExpr(Expr.Set expr) {
+		return parenthesize("=." + expr.name.lexeme(), expr.object, expr.value);
+	}
+
+	@Override
+	public String visitUnaryExpr(Expr.Unary expr) {
+		return parenthesize(expr.operator.lexeme(), expr.right);
+	}
+
+	@Override
+	public String visitVariableExpr(Expr.Variable expr) {
+		return expr.name.lexeme();
+	}
+}
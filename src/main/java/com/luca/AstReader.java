@@ -0,0 +1,307 @@
+package com.luca;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.luca.AstCache.*;
+
+// Rebuilds the AST written by AstWriter, resolver results included, so it
+// can go straight to a backend. AstCache checksums entries, but the reader
+// still checks everything a backend would trust: required nodes are present,
+// and every depth and slot lands inside a scope whose slot count matches its
+// declarations, so no Environment is indexed out of bounds.
+class AstReader {
+	private static final TokenType[] TYPES = TokenType.values();
+
+	// what the parser puts in each place a token is kept
+	private static final Set<TokenType> BINARY_OPERATORS = EnumSet.of(
+					TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL, TokenType.GREATER, TokenType.GREATER_EQUAL,
+					TokenType.LESS, TokenType.LESS_EQUAL, TokenType.MINUS, TokenType.PLUS, TokenType.SLASH, TokenType.STAR);
+	private static final Set<TokenType> LOGICAL_OPERATORS = EnumSet.of(TokenType.AND, TokenType.OR);
+	private static final Set<TokenType> UNARY_OPERATORS = EnumSet.of(TokenType.BANG, TokenType.MINUS);
+	private static final Set<TokenType> NAME = EnumSet.of(TokenType.IDENTIFIER);
+	private static final Set<TokenType> BREAK_KEYWORD = EnumSet.of(TokenType.BREAK);
+	private static final Set<TokenType> CONTINUE_KEYWORD = EnumSet.of(TokenType.CONTINUE);
+	private static final Set<TokenType> RETURN_KEYWORD = EnumSet.of(TokenType.RETURN);
+	private static final Set<TokenType> CALL_PAREN = EnumSet.of(TokenType.RIGHT_PAREN);
+
+	private static class Scope {
+		int declared = 0;
+		int highestSlot = -1;
+	}
+
+	private final ByteBuffer in;
+	private String[] strings;
+	// inline cache sites aren't stored; they're numbered afresh as nodes are read
+	private int sites = 0;
+	// innermost last, as in the Resolver
+	private final List<Scope> scopes = new ArrayList<>();
+
+	AstReader(ByteBuffer in) {
+		this.in = in;
+	}
+
+	List<Stmt> read() {
+		strings = new String[count()];
+		for (int i = 0; i < strings.length; ++i) {
+			byte[] encoded = new byte[count()];
+			in.get(encoded);
+			strings[i] = new String(encoded, StandardCharsets.UTF_8);
+		}
+
+		List<Stmt> statements = statements();
+		if (in.hasRemaining()) {
+			throw new IllegalArgumentException("Trailing bytes after AST.");
+		}
+		return statements;
+	}
+
+	private List<Stmt> statements() {
+		int count = count();
+		List<Stmt> statements = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			statements.add(statement());
+		}
+		return statements;
+	}
+
+	private Stmt statement() {
+		Stmt statement = optionalStatement();
+		if (statement == null) {
+			throw new IllegalArgumentException("Missing statement.");
+		}
+		return statement;
+	}
+
+	private Stmt optionalStatement() {
+		byte tag = in.get();
+		switch (tag) {
+			case NONE:
+				return null;
+			case BLOCK: {
+				beginScope();
+				Stmt.Block block = new Stmt.Block(statements());
+				block.slotCount = endScope();
+				return block;
+			}
+			case BREAK:
+				return new Stmt.Break(token(BREAK_KEYWORD));
+			case CLASS: {
+				Token name = token(NAME);
+				int count = count();
+				List<Stmt.Function> methods = new ArrayList<>(count);
+				for (int i = 0; i < count; ++i) {
+					methods.add(function(false));
+				}
+				Stmt.Class klass = new Stmt.Class(name, methods);
+				klass.slot = declare(in.getInt());
+				return klass;
+			}
+			case CONTINUE:
+				return new Stmt.Continue(token(CONTINUE_KEYWORD));
+			case EXPRESSION:
+				return new Stmt.Expression(expression());
+			case FUNCTION:
+				return function(true);
+			case IF:
+				return new Stmt.If(expression(), statement(), optionalStatement());
+			case PRINT:
+				return new Stmt.Print(expression());
+			case RETURN:
+				return new Stmt.Return(token(RETURN_KEYWORD), optionalExpression());
+			case VAR: {
+				Stmt.Var var = new Stmt.Var(token(NAME), optionalExpression());
+				var.slot = declare(in.getInt());
+				return var;
+			}
+			case WHILE:
+				return new Stmt.While(expression(), statement(), optionalExpression());
+			default:
+				throw new IllegalArgumentException("Unknown statement tag " + tag + ".");
+		}
+	}
+
+	// Methods aren't declared in the enclosing scope; functions are.
+	private Stmt.Function function(boolean declared) {
+		Token name = token(NAME);
+		int count = count();
+		List<Token> params = new ArrayList<>(count);
+		beginScope();
+		for (int i = 0; i < count; ++i) {
+			params.add(token(NAME));
+		}
+		current().declared = count;
+
+		Stmt.Function function = new Stmt.Function(name, params, statements());
+		int slot = in.getInt();
+		function.slotCount = endScope();
+		if (declared) {
+			function.slot = declare(slot);
+		}
+		else if (slot != -1) {
+			throw new IllegalArgumentException("Method with slot " + slot + ".");
+		}
+		return function;
+	}
+
+	private Expr expression() {
+		Expr expression = optionalExpression();
+		if (expression == null) {
+			throw new IllegalArgumentException("Missing expression.");
+		}
+		return expression;
+	}
+
+	private Expr optionalExpression() {
+		byte tag = in.get();
+		switch (tag) {
+			case NONE:
+				return null;
+			case ASSIGN: {
+				Expr.Assign assign = new Expr.Assign(token(NAME), expression());
+				assign.depth = depth();
+				assign.slot = slot(assign.depth);
+				return assign;
+			}
+			case BINARY:
+				return new Expr.Binary(expression(), token(BINARY_OPERATORS), expression());
+			case CALL: {
+				Expr callee = expression();
+				Token paren = token(CALL_PAREN);
+				int count = count();
+				List<Expr> arguments = new ArrayList<>(count);
+				for (int i = 0; i < count; ++i) {
+					arguments.add(expression());
+				}
+				Expr.Call call = new Expr.Call(callee, paren, arguments);
+				call.tail = in.get() != 0;
+				call.site = sites++;
+				return call;
+			}
+			case GET: {
+				Expr.Get get = new Expr.Get(expression(), token(NAME));
+				get.site = sites++;
+				return get;
+			}
+			case GROUPING:
+				return new Expr.Grouping(expression());
+			case LITERAL:
+				return new Expr.Literal(value());
+			case LOGICAL:
+				return new Expr.Logical(expression(), token(LOGICAL_OPERATORS), expression());
+			case SET: {
+				Expr.Set set = new Expr.Set(expression(), token(NAME), expression());
+				set.site = sites++;
+				return set;
+			}
+			case UNARY:
+				return new Expr.Unary(token(UNARY_OPERATORS), expression());
+			case VARIABLE: {
+				Expr.Variable variable = new Expr.Variable(token(NAME));
+				variable.depth = depth();
+				variable.slot = slot(variable.depth);
+				return variable;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown expression tag " + tag + ".");
+		}
+	}
+
+	private Object value() {
+		byte kind = in.get();
+		switch (kind) {
+			case NIL_VALUE: return null;
+			case FALSE_VALUE: return false;
+			case TRUE_VALUE: return true;
+			case NUMBER_VALUE: return in.getDouble();
+			case STRING_VALUE: return strings[in.getInt()];
+			default:
+				throw new IllegalArgumentException("Unknown literal kind " + kind + ".");
+		}
+	}
+
+	private void beginScope() {
+		scopes.add(new Scope());
+	}
+
+	private Scope current() {
+		return scopes.get(scopes.size() - 1);
+	}
+
+	// Reads the scope's slot count, which must match what was declared in it.
+	private int endScope() {
+		Scope scope = scopes.remove(scopes.size() - 1);
+		int slotCount = in.getInt();
+		if (slotCount != scope.declared || scope.highestSlot >= slotCount) {
+			throw new IllegalArgumentException("Bad slot count " + slotCount + ".");
+		}
+		return slotCount;
+	}
+
+	// A declaration's slot in the current scope, -1 at the top level.
+	private int declare(int slot) {
+		if (scopes.isEmpty()) {
+			if (slot != -1) {
+				throw new IllegalArgumentException("Global with slot " + slot + ".");
+			}
+			return slot;
+		}
+
+		++current().declared;
+		return use(current(), slot);
+	}
+
+	private int depth() {
+		int depth = in.getInt();
+		if (depth < -1 || depth >= scopes.size()) {
+			throw new IllegalArgumentException("Bad depth " + depth + ".");
+		}
+		return depth;
+	}
+
+	private int slot(int depth) {
+		int slot = in.getInt();
+		if (depth == -1) {
+			if (slot != -1) {
+				throw new IllegalArgumentException("Global with slot " + slot + ".");
+			}
+			return slot;
+		}
+		return use(scopes.get(scopes.size() - 1 - depth), slot);
+	}
+
+	private static int use(Scope scope, int slot) {
+		if (slot < 0) {
+			throw new IllegalArgumentException("Bad slot " + slot + ".");
+		}
+		scope.highestSlot = Math.max(scope.highestSlot, slot);
+		return slot;
+	}
+
+	// Every counted item takes at least a byte, which bounds what a corrupt
+	// entry can make us allocate.
+	private int count() {
+		int count = in.getInt();
+		if (count < 0 || count > in.remaining()) {
+			throw new IllegalArgumentException("Bad count " + count + ".");
+		}
+		return count;
+	}
+
+	// The backends take a logical operator that isn't OR for AND, and a unary
+	// one that isn't BANG for negation, so an operator the node can't hold
+	// would quietly run as another one rather than fail.
+	private Token token(Set<TokenType> allowed) {
+		int ordinal = in.get();
+		TokenType type = ordinal >= 0 && ordinal < TYPES.length ? TYPES[ordinal] : null;
+		if (!allowed.contains(type)) {
+			throw new IllegalArgumentException("Unexpected token type " + ordinal + ".");
+		}
+		String lexeme = strings[in.getInt()];
+		return new Token(type, lexeme, null, in.getInt());
+	}
+}
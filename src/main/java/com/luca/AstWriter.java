@@ -0,0 +1,305 @@
+package com.luca;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.luca.AstCache.*;
+
+// Encodes a resolved AST for AstCache: a table of every distinct string,
+// then the statements as tagged nodes in prefix order. Tokens keep their
+// type, lexeme and line; resolver results (depths, slots, frame sizes and
+// tail-call marks) are written with the nodes that carry them.
+class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	private ByteBuffer out = ByteBuffer.allocate(4096);
+	private final Map<String, Integer> stringIndex = new HashMap<>();
+	private final List<String> strings = new ArrayList<>();
+
+	byte[] write(List<Stmt> statements) {
+		statements(statements);
+		ByteBuffer nodes = out.flip();
+
+		out = ByteBuffer.allocate(4096);
+		putInt(strings.size());
+		for (String string : strings) {
+			byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+			putInt(encoded.length);
+			ensure(encoded.length);
+			out.put(encoded);
+		}
+		ensure(nodes.remaining());
+		out.put(nodes);
+
+		byte[] bytes = new byte[out.position()];
+		out.flip().get(bytes);
+		return bytes;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		putByte(BLOCK);
+		statements(stmt.statements);
+		putInt(stmt.slotCount);
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		putByte(BREAK);
+		token(stmt.keyword);
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		putByte(CLASS);
+		token(stmt.name);
+		putInt(stmt.methods.size());
+		for (Stmt.Function method : stmt.methods) {
+			function(method);
+		}
+		putInt(stmt.slot);
+		return null;
+	}
+
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		putByte(CONTINUE);
+		token(stmt.keyword);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		putByte(EXPRESSION);
+		expression(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		putByte(FUNCTION);
+		function(stmt);
+		return null;
+	}
+
+	private void function(Stmt.Function stmt) {
+		token(stmt.name);
+		putInt(stmt.params.size());
+		for (Token param : stmt.params) {
+			token(param);
+		}
+		statements(stmt.body);
+		putInt(stmt.slot);
+		putInt(stmt.slotCount);
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		putByte(IF);
+		expression(stmt.condition);
+		statement(stmt.thenBranch);
+		statement(stmt.elseBranch);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		putByte(PRINT);
+		expression(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		putByte(RETURN);
+		token(stmt.keyword);
+		expression(stmt.value);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		putByte(VAR);
+		token(stmt.name);
+		expression(stmt.initializer);
+		putInt(stmt.slot);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		putByte(WHILE);
+		expression(stmt.condition);
+		statement(stmt.body);
+		expression(stmt.increment);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		putByte(ASSIGN);
+		token(expr.name);
+		expression(expr.value);
+		putInt(expr.depth);
+		putInt(expr.slot);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		putByte(BINARY);
+		expression(expr.left);
+		token(expr.operator);
+		expression(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		putByte(CALL);
+		expression(expr.callee);
+		token(expr.paren);
+		putInt(expr.arguments.size());
+		for (Expr argument : expr.arguments) {
+			expression(argument);
+		}
+		putByte(expr.tail ? 1 : 0);
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		putByte(GET);
+		expression(expr.object);
+		token(expr.name);
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		putByte(GROUPING);
+		expression(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		putByte(LITERAL);
+		Object value = expr.value;
+		if (value == null) {
+			putByte(NIL_VALUE);
+		}
+		else if (value instanceof Boolean) {
+			putByte((boolean) value ? TRUE_VALUE : FALSE_VALUE);
+		}
+		else if (value instanceof Double) {
+			putByte(NUMBER_VALUE);
+			ensure(Double.BYTES);
+			out.putDouble((double) value);
+		}
+		else {
+			putByte(STRING_VALUE);
+			string((String) value);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		putByte(LOGICAL);
+		expression(expr.left);
+		token(expr.operator);
+		expression(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		putByte(SET);
+		expression(expr.object);
+		token(expr.name);
+		expression(expr.value);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		putByte(UNARY);
+		token(expr.operator);
+		expression(expr.right);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		putByte(VARIABLE);
+		token(expr.name);
+		putInt(expr.depth);
+		putInt(expr.slot);
+		return null;
+	}
+
+	private void statements(List<Stmt> statements) {
+		putInt(statements.size());
+		for (Stmt statement : statements) {
+			statement(statement);
+		}
+	}
+
+	private void statement(Stmt stmt) {
+		if (stmt == null) {
+			putByte(NONE);
+		}
+		else {
+			stmt.accept(this);
+		}
+	}
+
+	private void expression(Expr expr) {
+		if (expr == null) {
+			putByte(NONE);
+		}
+		else {
+			expr.accept(this);
+		}
+	}
+
+	private void token(Token token) {
+		putByte(token.type.ordinal());
+		string(token.lexeme());
+		putInt(token.line);
+	}
+
+	private void string(String string) {
+		Integer index = stringIndex.get(string);
+		if (index == null) {
+			index = strings.size();
+			stringIndex.put(string, index);
+			strings.add(string);
+		}
+		putInt(index);
+	}
+
+	private void putByte(int value) {
+		ensure(1);
+		out.put((byte) value);
+	}
+
+	private void putInt(int value) {
+		ensure(Integer.BYTES);
+		out.putInt(value);
+	}
+
+	private void ensure(int bytes) {
+		if (out.remaining() < bytes) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+			out.flip();
+			grown.put(out);
+			out = grown;
+		}
+	}
+}
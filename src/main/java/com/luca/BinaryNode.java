@@ -0,0 +1,245 @@
+package com.luca;
+
+// Binary operators start out uninitialized, specialize on the operand types
+// seen by their first execution, and fall back to Generic for good once a
+// specialization's guard fails.
+abstract class BinaryNode extends ExprNode {
+	final Token operator;
+	ExprNode left;
+	ExprNode right;
+
+	BinaryNode(Token operator, ExprNode left, ExprNode right) {
+		this.operator = operator;
+		this.left = adopt(left);
+		this.right = adopt(right);
+	}
+
+	@Override
+	Object execute(Environment frame) {
+		Object leftValue = left.execute(frame);
+		Object rightValue = right.execute(frame);
+		return apply(leftValue, rightValue);
+	}
+
+	// applies the operator to operands that were already evaluated
+	abstract Object apply(Object leftValue, Object rightValue);
+
+	@Override
+	void replaceChild(Node oldChild, Node newChild) {
+		if (left == oldChild) { left = (ExprNode) newChild; }
+		if (right == oldChild) { right = (ExprNode) newChild; }
+	}
+
+	static BinaryNode create(Token operator, ExprNode left, ExprNode right) {
+		switch (operator.type) {
+			case EQUAL_EQUAL: return new Equal(operator, left, right);
+			case BANG_EQUAL: return new NotEqual(operator, left, right);
+			default: return new Uninitialized(operator, left, right);
+		}
+	}
+
+	static class Uninitialized extends BinaryNode {
+		Uninitialized(Token operator, ExprNode left, ExprNode right) {
+			super(operator, left, right);
+		}
+
+		@Override
+		Object apply(Object leftValue, Object rightValue) {
+			return replace(specialize(leftValue, rightValue)).apply(leftValue, rightValue);
+		}
+
+		private BinaryNode specialize(Object leftValue, Object rightValue) {
+			boolean numbers = leftValue instanceof Double && rightValue instanceof Double;
+			if (operator.type == TokenType.PLUS && leftValue instanceof String && rightValue instanceof String) {
+				return new Concat(operator, left, right);
+			}
+			if (!numbers) {
+				return new Generic(operator, left, right);
+			}
+
+			switch (operator.type) {
+				case PLUS: return new Add(operator, left, right);
+				case MINUS: return new Subtract(operator, left, right);
+				case STAR: return new Multiply(operator, left, right);
+				case SLASH: return new Divide(operator, left, right);
+				case LESS: return new Less(operator, left, right);
+				case LESS_EQUAL: return new LessEqual(operator, left, right);
+				case GREATER: return new Greater(operator, left, right);
+				case GREATER_EQUAL: return new GreaterEqual(operator, left, right);
+				default: return new Generic(operator, left, right);
+			}
+		}
+	}
+
+	static class Generic extends BinaryNode {
+		Generic(Token operator, ExprNode left, ExprNode right) {
+			super(operator, left, right);
+		}
+
+		@Override
+		Object apply(Object leftValue, Object rightValue) {
+			return Interpreter.applyBinary(operator, leftValue, rightValue);
+		}
+	}
+
+	// Both operands are speculated to be numbers and evaluated unboxed. A
+	// non-number from either side rewrites the node to Generic, which finishes
+	// the operation with the values already computed.
+	abstract static class DoubleOperation extends BinaryNode {
+		DoubleOperation(Token operator, ExprNode left, ExprNode right) {
+			super(operator, left, right);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			double leftValue;
+			try {
+				leftValue = left.executeDouble(frame);
+			} catch (UnexpectedResult unexpected) {
+				return deoptimize(unexpected.result, right.execute(frame));
+			}
+
+			try {
+				return compute(leftValue, right.executeDouble(frame));
+			} catch (UnexpectedResult unexpected) {
+				return deoptimize(leftValue, unexpected.result);
+			}
+		}
+
+		@Override
+		Object apply(Object leftValue, Object rightValue) {
+			if (leftValue instanceof Double && rightValue instanceof Double) {
+				return compute((double) leftValue, (double) rightValue);
+			}
+			return deoptimize(leftValue, rightValue);
+		}
+
+		Object deoptimize(Object leftValue, Object rightValue) {
+			return replace(new Generic(operator, left, right)).apply(leftValue, rightValue);
+		}
+
+		abstract Object compute(double leftValue, double rightValue);
+	}
+
+	// Arithmetic results are numbers too, so they can be handed to the parent unboxed.
+	abstract static class DoubleArithmetic extends DoubleOperation {
+		DoubleArithmetic(Token operator, ExprNode left, ExprNode right) {
+			super(operator, left, right);
+		}
+
+		@Override
+		double executeDouble(Environment frame) throws UnexpectedResult {
+			double leftValue;
+			try {
+				leftValue = left.executeDouble(frame);
+			} catch (UnexpectedResult unexpected) {
+				return expectDouble(deoptimize(unexpected.result, right.execute(frame)));
+			}
+
+			try {
+				return computeDouble(leftValue, right.executeDouble(frame));
+			} catch (UnexpectedResult unexpected) {
+				return expectDouble(deoptimize(leftValue, unexpected.result));
+			}
+		}
+
+		@Override
+		Object compute(double leftValue, double rightValue) {
+			return computeDouble(leftValue, rightValue);
+		}
+
+		abstract double computeDouble(double leftValue, double rightValue);
+	}
+
+	static class Add extends DoubleArithmetic {
+		Add(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		double computeDouble(double leftValue, double rightValue) { return leftValue + rightValue; }
+	}
+
+	static class Subtract extends DoubleArithmetic {
+		Subtract(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		double computeDouble(double leftValue, double rightValue) { return leftValue - rightValue; }
+	}
+
+	static class Multiply extends DoubleArithmetic {
+		Multiply(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		double computeDouble(double leftValue, double rightValue) { return leftValue * rightValue; }
+	}
+
+	static class Divide extends DoubleArithmetic {
+		Divide(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		double computeDouble(double leftValue, double rightValue) { return leftValue / rightValue; }
+	}
+
+	static class Less extends DoubleOperation {
+		Less(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		Object compute(double leftValue, double rightValue) { return leftValue < rightValue; }
+	}
+
+	static class LessEqual extends DoubleOperation {
+		LessEqual(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		Object compute(double leftValue, double rightValue) { return leftValue <= rightValue; }
+	}
+
+	static class Greater extends DoubleOperation {
+		Greater(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		Object compute(double leftValue, double rightValue) { return leftValue > rightValue; }
+	}
+
+	static class GreaterEqual extends DoubleOperation {
+		GreaterEqual(Token operator, ExprNode left, ExprNode right) { super(operator, left, right); }
+
+		@Override
+		Object compute(double leftValue, double rightValue) { return leftValue >= rightValue; }
+	}
+
+	static class Concat extends BinaryNode {
+		Concat(Token operator, ExprNode left, ExprNode right) {
+			super(operator, left, right);
+		}
+
+		@Override
+		Object apply(Object leftValue, Object rightValue) {
+			if (leftValue instanceof String && rightValue instanceof String) {
+				return (String) leftValue + (String) rightValue;
+			}
+			return replace(new Generic(operator, left, right)).apply(leftValue, rightValue);
+		}
+	}
+
+	static class Equal extends BinaryNode {
+		Equal(Token operator, ExprNode left, ExprNode right) {
+			super(operator, left, right);
+		}
+
+		@Override
+		Object apply(Object leftValue, Object rightValue) {
+			return Interpreter.isEqual(leftValue, rightValue);
+		}
+	}
+
+	static class NotEqual extends BinaryNode {
+		NotEqual(Token operator, ExprNode left, ExprNode right) {
+			super(operator, left, right);
+		}
+
+		@Override
+		Object apply(Object leftValue, Object rightValue) {
+			return !Interpreter.isEqual(leftValue, rightValue);
+		}
+	}
+}
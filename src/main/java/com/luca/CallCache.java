@@ -0,0 +1,57 @@
+package com.luca;
+
+import java.util.Arrays;
+
+// Inline cache for Expr.Call sites. Remembers callees that already passed the
+// callable and arity checks so repeat calls skip them.
+class CallCache extends InlineCache {
+	private static final LucaCallable[] EMPTY = new LucaCallable[0];
+
+	private LucaCallable[] targets = EMPTY;
+
+	CallCache(Token site) {
+		super("call", site);
+	}
+
+	LucaCallable check(Object callee, int argCount) {
+		for (LucaCallable target : targets) {
+			if (target == callee) {
+				++hits;
+				return target;
+			}
+		}
+
+		++misses;
+		if (!(callee instanceof LucaCallable)) {
+			throw new RuntimeError(site, "Can only call functions and classes.");
+		}
+		LucaCallable function = (LucaCallable) callee;
+
+		if (argCount != function.arity()) {
+			throw new RuntimeError(site, "Expected " + function.arity() + " arguments but got "
+			+ argCount + ".");
+		}
+
+		add(function);
+		return function;
+	}
+
+	private void add(LucaCallable target) {
+		if (megamorphic) { return; }
+
+		if (targets.length == MAX_ENTRIES) {
+			megamorphic = true;
+			targets = EMPTY;
+			return;
+		}
+
+		LucaCallable[] updated = Arrays.copyOf(targets, targets.length + 1);
+		updated[targets.length] = target;
+		targets = updated;
+	}
+
+	@Override
+	int entryCount() {
+		return targets.length;
+	}
+}
@@ -0,0 +1,200 @@
+package com.luca;
+
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded channels for handing values between tasks:
+//
+//   channel(capacity)    a new channel buffering up to capacity values
+//   send(ch, value)      waits while the channel is full
+//   receive(ch)          waits while it's empty; nil once closed and drained
+//   close(ch)            wakes every waiting task; sends fail from then on
+//   trySend(ch, value)   false instead of waiting
+//   tryReceive(ch)       nil instead of waiting
+//   drained(ch)          true once it's closed and every value was received
+//
+// nil can't be sent, so a nil from receive always means the channel is done.
+// After a nil from tryReceive, drained tells an empty channel from one that
+// is finished.
+//
+// A waiting task parks on a j.u.c. Condition rather than a monitor, so on a
+// virtual thread it gives up its carrier while it waits. Tree-walker only,
+// like spawn and await.
+final class Channels {
+	static final LucaCallable CHANNEL = fn(1, arguments -> {
+		Object capacity = arguments.get(0);
+		if (!(capacity instanceof Double) || (double) capacity < 1 || (double) capacity != Math.floor((double) capacity)) {
+			throw new RuntimeError("Channel capacity must be a positive integer.");
+		}
+		return new Channel((int) (double) capacity);
+	});
+
+	static final LucaCallable SEND = fn(2, arguments -> {
+		channel(arguments).send(value(arguments));
+		return null;
+	});
+
+	static final LucaCallable RECEIVE = fn(1, arguments -> channel(arguments).receive());
+
+	static final LucaCallable CLOSE = fn(1, arguments -> {
+		channel(arguments).close();
+		return null;
+	});
+
+	static final LucaCallable TRY_SEND = fn(2, arguments -> channel(arguments).trySend(value(arguments)));
+
+	static final LucaCallable TRY_RECEIVE = fn(1, arguments -> channel(arguments).tryReceive());
+
+	static final LucaCallable DRAINED = fn(1, arguments -> channel(arguments).drained());
+
+	private interface Body {
+		Object call(List<Object> arguments);
+	}
+
+	private static LucaCallable fn(int arity, Body body) {
+		return new LucaCallable() {
+			@Override
+			public int arity() {
+				return arity;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> arguments) {
+				return body.call(arguments);
+			}
+
+			@Override
+			public String toString() {
+				return "<native fn>";
+			}
+		};
+	}
+
+	private static Channel channel(List<Object> arguments) {
+		Object channel = arguments.get(0);
+		if (!(channel instanceof Channel)) {
+			throw new RuntimeError("Expected a channel.");
+		}
+		return (Channel) channel;
+	}
+
+	private static Object value(List<Object> arguments) {
+		Object value = arguments.get(1);
+		if (value == null) {
+			throw new RuntimeError("Can't send nil on a channel.");
+		}
+		return value;
+	}
+
+	// A ring buffer behind one lock, like ArrayBlockingQueue, plus closing.
+	static final class Channel {
+		private final Object[] items;
+		private int head = 0;
+		private int count = 0;
+		private boolean closed = false;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition notEmpty = lock.newCondition();
+		private final Condition notFull = lock.newCondition();
+
+		Channel(int capacity) {
+			items = new Object[capacity];
+		}
+
+		void send(Object value) {
+			lock.lock();
+			try {
+				while (count == items.length && !closed) {
+					await(notFull);
+				}
+				enqueue(value);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		Object receive() {
+			lock.lock();
+			try {
+				while (count == 0 && !closed) {
+					await(notEmpty);
+				}
+				return count == 0 ? null : dequeue();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean trySend(Object value) {
+			lock.lock();
+			try {
+				if (count == items.length && !closed) { return false; }
+				enqueue(value);
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		Object tryReceive() {
+			lock.lock();
+			try {
+				return count == 0 ? null : dequeue();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean drained() {
+			lock.lock();
+			try {
+				return closed && count == 0;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void close() {
+			lock.lock();
+			try {
+				closed = true;
+				notEmpty.signalAll();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void enqueue(Object value) {
+			if (closed) {
+				throw new RuntimeError("Can't send on a closed channel.");
+			}
+			items[(head + count) % items.length] = value;
+			++count;
+			notEmpty.signal();
+		}
+
+		private Object dequeue() {
+			Object value = items[head];
+			items[head] = null;
+			head = (head + 1) % items.length;
+			--count;
+			notFull.signal();
+			return value;
+		}
+
+		private static void await(Condition condition) {
+			try {
+				condition.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeError("Interrupted while waiting on a channel.");
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "<channel>";
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.luca;
+
+import java.util.Arrays;
+
+class Chunk {
+	private static final int INITIAL_CAPACITY = 8;
+
+	byte[] code = new byte[INITIAL_CAPACITY];
+	int count = 0;
+	Object[] constants = new Object[INITIAL_CAPACITY];
+	int constantCount = 0;
+
+	// Run-length encoded line table: every offset from lineStarts[i] up to
+	// lineStarts[i + 1] was emitted for source line lineNumbers[i].
+	private int[] lineStarts = new int[INITIAL_CAPACITY];
+	private int[] lineNumbers = new int[INITIAL_CAPACITY];
+	private int lineCount = 0;
+
+	void write(int value, int line) {
+		if (count == code.length) {
+			code = Arrays.copyOf(code, count * 2);
+		}
+		code[count] = (byte) value;
+
+		if (lineCount == 0 || lineNumbers[lineCount - 1] != line) {
+			if (lineCount == lineStarts.length) {
+				lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+				lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+			}
+			lineStarts[lineCount] = count;
+			lineNumbers[lineCount] = line;
+			++lineCount;
+		}
+
+		++count;
+	}
+
+	int addConstant(Object value) {
+		if (constantCount == constants.length) {
+			constants = Arrays.copyOf(constants, constantCount * 2);
+		}
+		constants[constantCount] = value;
+		return constantCount++;
+	}
+
+	int getLine(int offset) {
+		int low = 0;
+		int high = lineCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (lineStarts[mid] <= offset) {
+				low = mid;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return lineNumbers[low];
+	}
+
+	void trim() {
+		code = Arrays.copyOf(code, count);
+		constants = Arrays.copyOf(constants, constantCount);
+		lineStarts = Arrays.copyOf(lineStarts, lineCount);
+		lineNumbers = Arrays.copyOf(lineNumbers, lineCount);
+	}
+}
@@ -0,0 +1,396 @@
+package com.luca;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the class file format for the JIT: a constant pool, fields,
+// and methods with a single Code attribute. Classes are written as version 49
+// so the JVM verifies them by type inference and no StackMapTable is needed.
+class ClassFileWriter {
+	private static final int VERSION = 49;
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	// opcodes used by the JIT
+	static final int ACONST_NULL = 0x01;
+	static final int ICONST_0 = 0x03;
+	static final int ICONST_1 = 0x04;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int ALOAD = 0x19;
+	static final int AALOAD = 0x32;
+	static final int ASTORE = 0x3a;
+	static final int AASTORE = 0x53;
+	static final int POP = 0x57;
+	static final int DUP = 0x59;
+	static final int DADD = 0x63;
+	static final int DSUB = 0x67;
+	static final int DMUL = 0x6b;
+	static final int DDIV = 0x6f;
+	static final int DNEG = 0x77;
+	static final int IXOR = 0x82;
+	static final int DCMPL = 0x97;
+	static final int DCMPG = 0x98;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9a;
+	static final int IFLT = 0x9b;
+	static final int IFGE = 0x9c;
+	static final int IFGT = 0x9d;
+	static final int IFLE = 0x9e;
+	static final int GOTO = 0xa7;
+	static final int ARETURN = 0xb0;
+	static final int RETURN = 0xb1;
+	static final int GETSTATIC = 0xb2;
+	static final int GETFIELD = 0xb4;
+	static final int PUTFIELD = 0xb5;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8;
+	static final int INVOKEINTERFACE = 0xb9;
+	static final int NEW = 0xbb;
+	static final int ANEWARRAY = 0xbd;
+	static final int CHECKCAST = 0xc0;
+	static final int INSTANCEOF = 0xc1;
+	static final int WIDE = 0xc4;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> poolIndex = new HashMap<>();
+	private int poolCount = 1;
+
+	private final int thisClass;
+	private final int superClass;
+	private final List<Integer> interfaces = new ArrayList<>();
+	private final List<byte[]> fields = new ArrayList<>();
+	private final List<byte[]> methods = new ArrayList<>();
+
+	ClassFileWriter(String name, String superName, String... interfaceNames) {
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		for (String interfaceName : interfaceNames) {
+			interfaces.add(classRef(interfaceName));
+		}
+	}
+
+	void field(int access, String name, String descriptor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		write(() -> {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0);
+		});
+		fields.add(bytes.toByteArray());
+	}
+
+	Code method(int access, String name, String descriptor, int argumentSlots) {
+		return new Code(access, name, descriptor, argumentSlots);
+	}
+
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		write(() -> {
+			out.writeInt(0xcafebabe);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			out.write(pool.toByteArray());
+			out.writeShort(ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.size());
+			for (int index : interfaces) {
+				out.writeShort(index);
+			}
+			out.writeShort(fields.size());
+			for (byte[] field : fields) {
+				out.write(field);
+			}
+			out.writeShort(methods.size());
+			for (byte[] method : methods) {
+				out.write(method);
+			}
+			out.writeShort(0);
+		});
+		return bytes.toByteArray();
+	}
+
+	int utf8(String value) {
+		return constant("U" + value, () -> {
+			poolOut.writeByte(1);
+			poolOut.writeUTF(value);
+		});
+	}
+
+	int classRef(String internalName) {
+		int name = utf8(internalName);
+		return constant("C" + internalName, () -> {
+			poolOut.writeByte(7);
+			poolOut.writeShort(name);
+		});
+	}
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(9, owner, name, descriptor);
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return memberRef(10, owner, name, descriptor);
+	}
+
+	int interfaceMethodRef(String owner, String name, String descriptor) {
+		return memberRef(11, owner, name, descriptor);
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		int ownerIndex = classRef(owner);
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		int nameAndType = constant("N" + name + ":" + descriptor, () -> {
+			poolOut.writeByte(12);
+			poolOut.writeShort(nameIndex);
+			poolOut.writeShort(descriptorIndex);
+		});
+		return constant(tag + owner + "." + name + ":" + descriptor, () -> {
+			poolOut.writeByte(tag);
+			poolOut.writeShort(ownerIndex);
+			poolOut.writeShort(nameAndType);
+		});
+	}
+
+	private interface Output {
+		void write() throws IOException;
+	}
+
+	private int constant(String key, Output entry) {
+		Integer index = poolIndex.get(key);
+		if (index != null) { return index; }
+
+		write(entry);
+		if (poolCount > 0xffff) {
+			throw new IllegalStateException("Constant pool overflow.");
+		}
+		poolIndex.put(key, poolCount);
+		return poolCount++;
+	}
+
+	private static void write(Output output) {
+		try {
+			output.write();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static class Label {
+		private int position = -1;
+		private int stack = -1;
+		private final List<Integer> fixups = new ArrayList<>();
+	}
+
+	// Bytecode for one method. Tracks the operand stack depth as instructions
+	// are appended, so callers pass each instruction's net stack effect.
+	class Code {
+		private final int access;
+		private final String name;
+		private final String descriptor;
+		private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+		private final List<Label> labels = new ArrayList<>();
+		private int stack = 0;
+		private int maxStack = 0;
+		private int maxLocals;
+
+		private Code(int access, String name, String descriptor, int argumentSlots) {
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.maxLocals = argumentSlots;
+		}
+
+		Label label() {
+			Label label = new Label();
+			labels.add(label);
+			return label;
+		}
+
+		int newLocal() {
+			return maxLocals++;
+		}
+
+		void op(int opcode, int stackEffect) {
+			code.write(opcode);
+			adjust(stackEffect);
+		}
+
+		void push(int value) {
+			if (value >= -1 && value <= 5) {
+				op(ICONST_0 + value, 1);
+			}
+			else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				op(BIPUSH, 1);
+				code.write(value);
+			}
+			else {
+				op(SIPUSH, 1);
+				writeShort(value);
+			}
+		}
+
+		void load(int local) {
+			local(ALOAD, local, 1);
+		}
+
+		void store(int local) {
+			local(ASTORE, local, -1);
+		}
+
+		private void local(int opcode, int local, int stackEffect) {
+			if (local > 0xff) {
+				code.write(WIDE);
+				op(opcode, stackEffect);
+				writeShort(local);
+			}
+			else {
+				op(opcode, stackEffect);
+				code.write(local);
+			}
+		}
+
+		void type(int opcode, String internalName) {
+			int index = classRef(internalName);
+			op(opcode, opcode == NEW ? 1 : 0);
+			writeShort(index);
+		}
+
+		void field(int opcode, String owner, String name, String descriptor) {
+			int index = fieldRef(owner, name, descriptor);
+			int size = slots(descriptor);
+			switch (opcode) {
+				case GETSTATIC: op(opcode, size); break;
+				case GETFIELD: op(opcode, size - 1); break;
+				default: op(opcode, -size - 1);
+			}
+			writeShort(index);
+		}
+
+		void invoke(int opcode, String owner, String name, String descriptor) {
+			int arguments = argumentSlots(descriptor);
+			int result = slots(descriptor.substring(descriptor.indexOf(')') + 1));
+			int receiver = opcode == INVOKESTATIC ? 0 : 1;
+			if (opcode == INVOKEINTERFACE) {
+				op(opcode, result - arguments - receiver);
+				writeShort(interfaceMethodRef(owner, name, descriptor));
+				code.write(arguments + 1);
+				code.write(0);
+			}
+			else {
+				op(opcode, result - arguments - receiver);
+				writeShort(methodRef(owner, name, descriptor));
+			}
+		}
+
+		void jump(int opcode, Label target) {
+			int at = code.size();
+			op(opcode, opcode == GOTO ? 0 : -1);
+			mark(target);
+			target.fixups.add(at);
+			writeShort(0);
+			if (opcode == GOTO) { stack = -1; }
+		}
+
+		// Ends straight-line code after a return.
+		void terminate(int opcode) {
+			op(opcode, opcode == RETURN ? 0 : -1);
+			stack = -1;
+		}
+
+		void place(Label label) {
+			label.position = code.size();
+			if (stack == -1) {
+				stack = Math.max(label.stack, 0);
+			}
+			mark(label);
+		}
+
+		private void mark(Label label) {
+			if (label.stack == -1) { label.stack = stack; }
+		}
+
+		private void adjust(int stackEffect) {
+			if (stack == -1) { stack = 0; }
+			stack += stackEffect;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		private void writeShort(int value) {
+			code.write((value >> 8) & 0xff);
+			code.write(value & 0xff);
+		}
+
+		void finish() {
+			byte[] bytes = code.toByteArray();
+			for (Label label : labels) {
+				for (int at : label.fixups) {
+					int offset = label.position - at;
+					if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+						throw new IllegalStateException("Jump too long.");
+					}
+					bytes[at + 1] = (byte) ((offset >> 8) & 0xff);
+					bytes[at + 2] = (byte) (offset & 0xff);
+				}
+			}
+			if (bytes.length > 0xffff) {
+				throw new IllegalStateException("Method too large.");
+			}
+
+			ByteArrayOutputStream method = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(method);
+			write(() -> {
+				out.writeShort(access);
+				out.writeShort(utf8(name));
+				out.writeShort(utf8(descriptor));
+				out.writeShort(1);
+				out.writeShort(utf8("Code"));
+				out.writeInt(12 + bytes.length);
+				out.writeShort(maxStack);
+				out.writeShort(maxLocals);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				out.writeShort(0);
+				out.writeShort(0);
+			});
+			methods.add(method.toByteArray());
+		}
+	}
+
+	private static int argumentSlots(String descriptor) {
+		int slots = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			while (c == '[') { c = descriptor.charAt(++i); }
+			if (c == 'L') { i = descriptor.indexOf(';', i); }
+			slots += (c == 'D' || c == 'J') && descriptor.charAt(i - 1) != '[' ? 2 : 1;
+			++i;
+		}
+		return slots;
+	}
+
+	private static int slots(String type) {
+		switch (type.charAt(0)) {
+			case 'V': return 0;
+			case 'D': case 'J': return 2;
+			default: return 1;
+		}
+	}
+}
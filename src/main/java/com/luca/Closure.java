@@ -0,0 +1,28 @@
+package com.luca;
+
+import java.util.List;
+
+class Closure implements LucaCallable {
+	final CompiledFunction function;
+	final Upvalue[] upvalues;
+
+	Closure(CompiledFunction function) {
+		this.function = function;
+		this.upvalues = new Upvalue[function.upvalueCount];
+	}
+
+	@Override
+	public int arity() {
+		return function.arity;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, List<Object> arguments) {
+		throw new UnsupportedOperationException("Compiled closures can only be called by the VM.");
+	}
+
+	@Override
+	public String toString() {
+		return function.toString();
+	}
+}
@@ -0,0 +1,505 @@
+package com.luca;
+
+import lombok.RequiredArgsConstructor;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compiles the resolved AST once into a tree of pre-linked Java closures.
+// Operator choice, variable addresses, constants and inline caches are fixed
+// at compile time, so running a program never goes through accept/visit or
+// switches on a token type.
+@RequiredArgsConstructor
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Evaluation>, Stmt.Visitor<ClosureCompiler.Execution> {
+	interface Evaluation {
+		Object evaluate(Environment frame);
+	}
+
+	interface Execution {
+		Completion execute(Environment frame);
+	}
+
+	private final Map<String, Object> globals;
+	private final PrintStream out;
+	// same frame elision as NodeBuilder: blocks without locals reuse their parent's frame
+	private final List<Boolean> scopes = new ArrayList<>();
+
+	Execution[] compile(List<Stmt> statements) {
+		Execution[] compiled = new Execution[statements.size()];
+		for (int i = 0; i < compiled.length; ++i) {
+			compiled[i] = compile(statements.get(i));
+		}
+		return compiled;
+	}
+
+	static Execution sequence(Execution[] statements) {
+		if (statements.length == 1) { return statements[0]; }
+		if (statements.length == 2) {
+			Execution first = statements[0];
+			Execution second = statements[1];
+			return frame -> {
+				Completion completion = first.execute(frame);
+				return completion != Completion.NORMAL ? completion : second.execute(frame);
+			};
+		}
+		return frame -> executeAll(statements, frame);
+	}
+
+	static Completion executeAll(Execution[] statements, Environment frame) {
+		for (Execution statement : statements) {
+			Completion completion = statement.execute(frame);
+			if (completion != Completion.NORMAL) { return completion; }
+		}
+		return Completion.NORMAL;
+	}
+
+	@Override
+	public Execution visitBlockStmt(Stmt.Block stmt) {
+		scopes.add(stmt.slotCount > 0);
+		Execution[] statements = compile(stmt.statements);
+		scopes.remove(scopes.size() - 1);
+
+		Execution sequence = sequence(statements);
+		int slotCount = stmt.slotCount;
+		if (slotCount == 0) {
+			return sequence;
+		}
+		return frame -> sequence.execute(new Environment(frame, slotCount));
+	}
+
+	@Override
+	public Execution visitBreakStmt(Stmt.Break stmt) {
+		return frame -> Completion.BREAK;
+	}
+
+	@Override
+	public Execution visitClassStmt(Stmt.Class stmt) {
+		Map<String, ClosureFunction.Body> bodies = new HashMap<>();
+		for (Stmt.Function method : stmt.methods) {
+			bodies.put(method.name.lexeme(), function(method));
+		}
+
+		String name = stmt.name.lexeme();
+		Definition define = definition(stmt.name, stmt.slot);
+		return frame -> {
+			define.define(frame, null);
+
+			Map<String, LucaCallable> methods = new HashMap<>();
+			for (Map.Entry<String, ClosureFunction.Body> method : bodies.entrySet()) {
+				methods.put(method.getKey(), new ClosureFunction(method.getValue(), frame));
+			}
+
+			define.define(frame, new LucaClass(name, methods));
+			return Completion.NORMAL;
+		};
+	}
+
+	@Override
+	public Execution visitContinueStmt(Stmt.Continue stmt) {
+		return frame -> Completion.CONTINUE;
+	}
+
+	@Override
+	public Execution visitExpressionStmt(Stmt.Expression stmt) {
+		Evaluation expression = compile(stmt.expression);
+		return frame -> {
+			expression.evaluate(frame);
+			return Completion.NORMAL;
+		};
+	}
+
+	@Override
+	public Execution visitFunctionStmt(Stmt.Function stmt) {
+		ClosureFunction.Body body = function(stmt);
+		Definition define = definition(stmt.name, stmt.slot);
+		return frame -> {
+			define.define(frame, new ClosureFunction(body, frame));
+			return Completion.NORMAL;
+		};
+	}
+
+	private ClosureFunction.Body function(Stmt.Function stmt) {
+		scopes.add(true);
+		Execution[] body = compile(stmt.body);
+		scopes.remove(scopes.size() - 1);
+		return new ClosureFunction.Body(stmt.name.lexeme(), stmt.params.size(), stmt.slotCount, sequence(body));
+	}
+
+	@Override
+	public Execution visitIfStmt(Stmt.If stmt) {
+		Evaluation condition = compile(stmt.condition);
+		Execution thenBranch = compile(stmt.thenBranch);
+		if (stmt.elseBranch == null) {
+			return frame -> Interpreter.isTruthy(condition.evaluate(frame)) ? thenBranch.execute(frame) : Completion.NORMAL;
+		}
+
+		Execution elseBranch = compile(stmt.elseBranch);
+		return frame -> Interpreter.isTruthy(condition.evaluate(frame)) ? thenBranch.execute(frame) : elseBranch.execute(frame);
+	}
+
+	@Override
+	public Execution visitPrintStmt(Stmt.Print stmt) {
+		Evaluation expression = compile(stmt.expression);
+		return frame -> {
+			out.println(Interpreter.stringify(expression.evaluate(frame)));
+			return Completion.NORMAL;
+		};
+	}
+
+	@Override
+	public Execution visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value == null) {
+			Completion completion = Completion.returning(null);
+			return frame -> completion;
+		}
+
+		Evaluation value = compile(stmt.value);
+		return frame -> Completion.returning(value.evaluate(frame));
+	}
+
+	@Override
+	public Execution visitVarStmt(Stmt.Var stmt) {
+		Definition define = definition(stmt.name, stmt.slot);
+		if (stmt.initializer == null) {
+			return frame -> {
+				define.define(frame, null);
+				return Completion.NORMAL;
+			};
+		}
+
+		Evaluation initializer = compile(stmt.initializer);
+		return frame -> {
+			define.define(frame, initializer.evaluate(frame));
+			return Completion.NORMAL;
+		};
+	}
+
+	@Override
+	public Execution visitWhileStmt(Stmt.While stmt) {
+		Evaluation condition = compile(stmt.condition);
+		Execution body = compile(stmt.body);
+		Evaluation increment = stmt.increment == null ? frame -> null : compile(stmt.increment);
+		return frame -> {
+			while (Interpreter.isTruthy(condition.evaluate(frame))) {
+				Completion completion = body.execute(frame);
+				if (completion == Completion.BREAK) { break; }
+				if (completion.kind == Completion.Kind.RETURN) { return completion; }
+
+				increment.evaluate(frame);
+			}
+			return Completion.NORMAL;
+		};
+	}
+
+	private interface Definition {
+		void define(Environment frame, Object value);
+	}
+
+	private Definition definition(Token name, int slot) {
+		if (slot == -1) {
+			String key = name.lexeme();
+			return (frame, value) -> globals.put(key, value);
+		}
+		return (frame, value) -> frame.define(slot, value);
+	}
+
+	@Override
+	public Evaluation visitAssignExpr(Expr.Assign expr) {
+		Evaluation value = compile(expr.value);
+		if (expr.depth == -1) {
+			Token name = expr.name;
+			return frame -> {
+				Object result = value.evaluate(frame);
+				if (!globals.containsKey(name.lexeme())) {
+					throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+				}
+				globals.put(name.lexeme(), result);
+				return result;
+			};
+		}
+
+		int depth = frameDepth(expr.depth);
+		int slot = expr.slot;
+		if (depth == 0) {
+			return frame -> {
+				Object result = value.evaluate(frame);
+				frame.define(slot, result);
+				return result;
+			};
+		}
+		return frame -> {
+			Object result = value.evaluate(frame);
+			frame.assignAt(depth, slot, result);
+			return result;
+		};
+	}
+
+	@Override
+	public Evaluation visitBinaryExpr(Expr.Binary expr) {
+		Evaluation left = compile(expr.left);
+		Evaluation right = compile(expr.right);
+		Token operator = expr.operator;
+
+		// each case handles its common operand types inline and leaves the
+		// rest, including the type errors, to applyBinary
+		switch (operator.type) {
+			case PLUS:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a + (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case MINUS:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a - (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case STAR:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a * (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case SLASH:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a / (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case LESS:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a < (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case LESS_EQUAL:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a <= (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case GREATER:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a > (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case GREATER_EQUAL:
+				return frame -> {
+					Object a = left.evaluate(frame);
+					Object b = right.evaluate(frame);
+					if (a instanceof Double && b instanceof Double) { return (double) a >= (double) b; }
+					return Interpreter.applyBinary(operator, a, b);
+				};
+			case EQUAL_EQUAL:
+				return frame -> Interpreter.isEqual(left.evaluate(frame), right.evaluate(frame));
+			default:
+				return frame -> !Interpreter.isEqual(left.evaluate(frame), right.evaluate(frame));
+		}
+	}
+
+	@Override
+	public Evaluation visitCallExpr(Expr.Call expr) {
+		Evaluation callee = compile(expr.callee);
+		Evaluation[] arguments = new Evaluation[expr.arguments.size()];
+		for (int i = 0; i < arguments.length; ++i) {
+			arguments[i] = compile(expr.arguments.get(i));
+		}
+
+		// up to three arguments are passed without an array, see LucaCallable
+		Token paren = expr.paren;
+		CallCache cache = new CallCache(paren);
+		switch (arguments.length) {
+			case 0:
+				return frame -> {
+					Object function = callee.evaluate(frame);
+					try {
+						return cache.check(function, 0).call0(null);
+					} catch (StackOverflowError error) {
+						throw stackOverflow(paren);
+					}
+				};
+			case 1: {
+				Evaluation first = arguments[0];
+				return frame -> {
+					Object function = callee.evaluate(frame);
+					Object a = first.evaluate(frame);
+					try {
+						return cache.check(function, 1).call1(null, a);
+					} catch (StackOverflowError error) {
+						throw stackOverflow(paren);
+					}
+				};
+			}
+			case 2: {
+				Evaluation first = arguments[0];
+				Evaluation second = arguments[1];
+				return frame -> {
+					Object function = callee.evaluate(frame);
+					Object a = first.evaluate(frame);
+					Object b = second.evaluate(frame);
+					try {
+						return cache.check(function, 2).call2(null, a, b);
+					} catch (StackOverflowError error) {
+						throw stackOverflow(paren);
+					}
+				};
+			}
+			case 3: {
+				Evaluation first = arguments[0];
+				Evaluation second = arguments[1];
+				Evaluation third = arguments[2];
+				return frame -> {
+					Object function = callee.evaluate(frame);
+					Object a = first.evaluate(frame);
+					Object b = second.evaluate(frame);
+					Object c = third.evaluate(frame);
+					try {
+						return cache.check(function, 3).call3(null, a, b, c);
+					} catch (StackOverflowError error) {
+						throw stackOverflow(paren);
+					}
+				};
+			}
+			default:
+				return frame -> {
+					Object function = callee.evaluate(frame);
+					Object[] values = new Object[arguments.length];
+					for (int i = 0; i < values.length; ++i) {
+						values[i] = arguments[i].evaluate(frame);
+					}
+					try {
+						return cache.check(function, values.length).callN(null, values);
+					} catch (StackOverflowError error) {
+						throw stackOverflow(paren);
+					}
+				};
+		}
+	}
+
+	// The deepest call catches the overflow; the calls it unwinds through let
+	// the RuntimeError pass, as the VM reports running out of frames.
+	private static RuntimeError stackOverflow(Token paren) {
+		return new RuntimeError(paren, "Stack overflow.");
+	}
+
+	@Override
+	public Evaluation visitGetExpr(Expr.Get expr) {
+		Evaluation object = compile(expr.object);
+		Token name = expr.name;
+		PropertyCache cache = new PropertyCache("get", name);
+		return frame -> {
+			Object receiver = object.evaluate(frame);
+			if (receiver instanceof LucaInstance) {
+				return cache.get((LucaInstance) receiver);
+			}
+
+			throw new RuntimeError(name, "Only instances have properties.");
+		};
+	}
+
+	@Override
+	public Evaluation visitGroupingExpr(Expr.Grouping expr) {
+		return compile(expr.expression);
+	}
+
+	@Override
+	public Evaluation visitLiteralExpr(Expr.Literal expr) {
+		Object value = expr.value;
+		return frame -> value;
+	}
+
+	@Override
+	public Evaluation visitLogicalExpr(Expr.Logical expr) {
+		Evaluation left = compile(expr.left);
+		Evaluation right = compile(expr.right);
+		if (expr.operator.type == TokenType.OR) {
+			return frame -> {
+				Object value = left.evaluate(frame);
+				return Interpreter.isTruthy(value) ? value : right.evaluate(frame);
+			};
+		}
+		return frame -> {
+			Object value = left.evaluate(frame);
+			return Interpreter.isTruthy(value) ? right.evaluate(frame) : value;
+		};
+	}
+
+	@Override
+	public Evaluation visitSetExpr(Expr.Set expr) {
+		Evaluation object = compile(expr.object);
+		Evaluation value = compile(expr.value);
+		Token name = expr.name;
+		PropertyCache cache = new PropertyCache("set", name);
+		return frame -> {
+			Object receiver = object.evaluate(frame);
+			if (!(receiver instanceof LucaInstance)) {
+				throw new RuntimeError(name, "Only instances have fields.");
+			}
+
+			Object result = value.evaluate(frame);
+			cache.set((LucaInstance) receiver, result);
+			return result;
+		};
+	}
+
+	@Override
+	public Evaluation visitUnaryExpr(Expr.Unary expr) {
+		Evaluation right = compile(expr.right);
+		if (expr.operator.type == TokenType.BANG) {
+			return frame -> !Interpreter.isTruthy(right.evaluate(frame));
+		}
+
+		Token operator = expr.operator;
+		return frame -> {
+			Object value = right.evaluate(frame);
+			if (value instanceof Double) { return -(double) value; }
+			return Interpreter.applyUnary(operator, value);
+		};
+	}
+
+	@Override
+	public Evaluation visitVariableExpr(Expr.Variable expr) {
+		if (expr.depth == -1) {
+			Token name = expr.name;
+			return frame -> {
+				Object value = globals.get(name.lexeme());
+				if (value == null && !globals.containsKey(name.lexeme())) {
+					throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+				}
+				return value;
+			};
+		}
+
+		int depth = frameDepth(expr.depth);
+		int slot = expr.slot;
+		return frame -> frame.getAt(depth, slot);
+	}
+
+	private int frameDepth(int depth) {
+		int frames = depth;
+		for (int i = scopes.size() - depth; i < scopes.size(); ++i) {
+			if (!scopes.get(i)) { --frames; }
+		}
+		return frames;
+	}
+
+	private Execution compile(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	private Evaluation compile(Expr expr) {
+		return expr.accept(this);
+	}
+}
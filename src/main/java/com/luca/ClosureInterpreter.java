@@ -0,0 +1,23 @@
+package com.luca;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs scripts as trees of pre-linked closures built by ClosureCompiler.
+class ClosureInterpreter {
+	private final Map<String, Object> globals = new HashMap<>();
+	private final PrintStream out;
+
+	ClosureInterpreter(PrintStream out) {
+		this.out = out;
+		globals.put("clock", Interpreter.CLOCK);
+		globals.put("clockNanos", Interpreter.CLOCK_NANOS);
+	}
+
+	void interpret(List<Stmt> statements) {
+		ClosureCompiler.Execution[] program = new ClosureCompiler(globals, out).compile(statements);
+		ClosureCompiler.executeAll(program, null);
+	}
+}
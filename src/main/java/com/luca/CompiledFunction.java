@@ -0,0 +1,16 @@
+package com.luca;
+
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+class CompiledFunction {
+	final String name;
+	final int arity;
+	final Chunk chunk = new Chunk();
+	int upvalueCount = 0;
+
+	@Override
+	public String toString() {
+		return name == null ? "<script>" : "<fn " + name + ">";
+	}
+}
@@ -0,0 +1,577 @@
+package com.luca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	private static final int MAX_LOCALS = 256;
+	private static final int MAX_UPVALUES = 256;
+	private static final int MAX_CONSTANTS = 65536;
+	private static final int MAX_JUMP = 65535;
+
+	private static class Local {
+		final String name;
+		int depth;
+		boolean captured = false;
+
+		Local(String name, int depth) {
+			this.name = name;
+			this.depth = depth;
+		}
+	}
+
+	private static class UpvalueRef {
+		final int index;
+		final boolean isLocal;
+
+		UpvalueRef(int index, boolean isLocal) {
+			this.index = index;
+			this.isLocal = isLocal;
+		}
+	}
+
+	private static class Loop {
+		final Loop enclosing;
+		final int scopeDepth;
+		final List<Integer> breakJumps = new ArrayList<>();
+		final List<Integer> continueJumps = new ArrayList<>();
+
+		Loop(Loop enclosing, int scopeDepth) {
+			this.enclosing = enclosing;
+			this.scopeDepth = scopeDepth;
+		}
+	}
+
+	private static class FunctionState {
+		final FunctionState enclosing;
+		final CompiledFunction function;
+		final List<Local> locals = new ArrayList<>();
+		final List<UpvalueRef> upvalues = new ArrayList<>();
+		int scopeDepth = 0;
+		Loop loop = null;
+
+		FunctionState(FunctionState enclosing, CompiledFunction function) {
+			this.enclosing = enclosing;
+			this.function = function;
+			// slot zero holds the callee itself
+			locals.add(new Local("", 0));
+		}
+	}
+
+	private final ErrorReporter reporter;
+	private FunctionState current;
+	private int line = 1;
+
+	Compiler(ErrorReporter reporter) {
+		this.reporter = reporter;
+	}
+
+	CompiledFunction compile(List<Stmt> statements) {
+		current = new FunctionState(null, new CompiledFunction(null, 0));
+		for (Stmt statement : statements) {
+			compile(statement);
+		}
+		return endFunction();
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		beginScope();
+		for (Stmt statement : stmt.statements) {
+			compile(statement);
+		}
+		endScope();
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		line = stmt.name.line;
+		emit(OpCode.CLASS);
+		emitShort(makeConstant(stmt.name.lexeme()));
+		defineVariable(stmt.name);
+
+		namedVariable(stmt.name);
+		for (Stmt.Function method : stmt.methods) {
+			function(method);
+			line = method.name.line;
+			emit(OpCode.METHOD);
+			emitShort(makeConstant(method.name.lexeme()));
+		}
+		emit(OpCode.POP);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		discard(stmt.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		if (current.scopeDepth > 0) {
+			// locals are initialized up front so the body can recurse
+			addLocal(stmt.name);
+			function(stmt);
+		}
+		else {
+			function(stmt);
+			defineVariable(stmt.name);
+		}
+		return null;
+	}
+
+	private void function(Stmt.Function stmt) {
+		current = new FunctionState(current, new CompiledFunction(stmt.name.lexeme(), stmt.params.size()));
+		beginScope();
+		for (Token param : stmt.params) {
+			addLocal(param);
+		}
+		for (Stmt statement : stmt.body) {
+			compile(statement);
+		}
+
+		List<UpvalueRef> upvalues = current.upvalues;
+		CompiledFunction function = endFunction();
+
+		line = stmt.name.line;
+		emit(OpCode.CLOSURE);
+		emitShort(makeConstant(function));
+		for (UpvalueRef upvalue : upvalues) {
+			emit(upvalue.isLocal ? 1 : 0);
+			emit(upvalue.index);
+		}
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		compile(stmt.condition);
+		int thenJump = emitJump(OpCode.POP_JUMP_IF_FALSE);
+		compile(stmt.thenBranch);
+		if (stmt.elseBranch == null) {
+			patchJump(thenJump);
+			return null;
+		}
+
+		int elseJump = emitJump(OpCode.JUMP);
+		patchJump(thenJump);
+		compile(stmt.elseBranch);
+		patchJump(elseJump);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		compile(stmt.expression);
+		emit(OpCode.PRINT);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		line = stmt.keyword.line;
+		if (stmt.value != null) {
+			compile(stmt.value);
+		}
+		else {
+			emit(OpCode.NIL);
+		}
+		emit(OpCode.RETURN);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		line = stmt.name.line;
+		if (current.scopeDepth > 0) {
+			// declared before the initializer runs, but not resolvable until it has
+			Local local = addLocal(stmt.name);
+			local.depth = -1;
+			compileInitializer(stmt);
+			local.depth = current.scopeDepth;
+		}
+		else {
+			compileInitializer(stmt);
+			defineVariable(stmt.name);
+		}
+		return null;
+	}
+
+	private void compileInitializer(Stmt.Var stmt) {
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		}
+		else {
+			emit(OpCode.NIL);
+		}
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		Loop loop = new Loop(current.loop, current.scopeDepth);
+		current.loop = loop;
+
+		// The condition goes after the body, so each iteration ends in a
+		// single conditional jump back instead of a jump and a test.
+		int conditionJump = emitJump(OpCode.JUMP);
+		int bodyStart = current.function.chunk.count;
+		compile(stmt.body);
+
+		for (int jump : loop.continueJumps) {
+			patchJump(jump);
+		}
+		if (stmt.increment != null) {
+			discard(stmt.increment);
+		}
+
+		patchJump(conditionJump);
+		compile(stmt.condition);
+		emitLoop(bodyStart);
+
+		for (int jump : loop.breakJumps) {
+			patchJump(jump);
+		}
+
+		current.loop = loop.enclosing;
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		line = stmt.keyword.line;
+		discardLoopLocals();
+		current.loop.breakJumps.add(emitJump(OpCode.JUMP));
+		return null;
+	}
+
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		line = stmt.keyword.line;
+		discardLoopLocals();
+		current.loop.continueJumps.add(emitJump(OpCode.JUMP));
+		return null;
+	}
+
+	// Pops the locals declared inside the loop body without forgetting them;
+	// the enclosing scopes still own them for the code that follows.
+	private void discardLoopLocals() {
+		List<Local> locals = current.locals;
+		for (int i = locals.size() - 1; i >= 0 && locals.get(i).depth > current.loop.scopeDepth; --i) {
+			emit(locals.get(i).captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+		}
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		compile(expr.value);
+		line = expr.name.line;
+
+		int slot = resolveLocal(current, expr.name);
+		if (slot != -1) {
+			emit(OpCode.SET_LOCAL);
+			emit(slot);
+			return null;
+		}
+
+		int upvalue = resolveUpvalue(current, expr.name);
+		if (upvalue != -1) {
+			emit(OpCode.SET_UPVALUE);
+			emit(upvalue);
+			return null;
+		}
+
+		emit(OpCode.SET_GLOBAL);
+		emitShort(makeConstant(expr.name));
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.left);
+		compile(expr.right);
+		line = expr.operator.line;
+
+		switch (expr.operator.type) {
+			case GREATER: emit(OpCode.GREATER); break;
+			case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+			case LESS: emit(OpCode.LESS); break;
+			case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+			case MINUS: emit(OpCode.SUBTRACT); break;
+			case PLUS: emit(OpCode.ADD); break;
+			case SLASH: emit(OpCode.DIVIDE); break;
+			case STAR: emit(OpCode.MULTIPLY); break;
+			case BANG_EQUAL: emit(OpCode.NOT_EQUAL); break;
+			case EQUAL_EQUAL: emit(OpCode.EQUAL); break;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		compile(expr.callee);
+		for (Expr argument : expr.arguments) {
+			compile(argument);
+		}
+
+		line = expr.paren.line;
+		emit(OpCode.CALL);
+		emit(expr.arguments.size());
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		compile(expr.object);
+		line = expr.name.line;
+		emit(OpCode.GET_PROPERTY);
+		emitShort(makeConstant(expr.name));
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			emit(OpCode.NIL);
+		}
+		else if (expr.value == Boolean.TRUE) {
+			emit(OpCode.TRUE);
+		}
+		else if (expr.value == Boolean.FALSE) {
+			emit(OpCode.FALSE);
+		}
+		else {
+			emit(OpCode.CONSTANT);
+			emitShort(makeConstant(expr.value));
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		compile(expr.left);
+		line = expr.operator.line;
+
+		int shortCircuit = expr.operator.type == TokenType.OR ? OpCode.JUMP_IF_TRUE : OpCode.JUMP_IF_FALSE;
+		int endJump = emitJump(shortCircuit);
+		emit(OpCode.POP);
+		compile(expr.right);
+		patchJump(endJump);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		compile(expr.object);
+		compile(expr.value);
+		line = expr.name.line;
+		emit(OpCode.SET_PROPERTY);
+		emitShort(makeConstant(expr.name));
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.right);
+		line = expr.operator.line;
+
+		switch (expr.operator.type) {
+			case BANG: emit(OpCode.NOT); break;
+			case MINUS: emit(OpCode.NEGATE); break;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		line = expr.name.line;
+		namedVariable(expr.name);
+		return null;
+	}
+
+	private void namedVariable(Token name) {
+		int slot = resolveLocal(current, name);
+		if (slot != -1) {
+			emit(OpCode.GET_LOCAL);
+			emit(slot);
+			return;
+		}
+
+		int upvalue = resolveUpvalue(current, name);
+		if (upvalue != -1) {
+			emit(OpCode.GET_UPVALUE);
+			emit(upvalue);
+			return;
+		}
+
+		emit(OpCode.GET_GLOBAL);
+		emitShort(makeConstant(name));
+	}
+
+	private void defineVariable(Token name) {
+		if (current.scopeDepth > 0) {
+			addLocal(name);
+			return;
+		}
+
+		emit(OpCode.DEFINE_GLOBAL);
+		emitShort(makeConstant(name));
+	}
+
+	private Local addLocal(Token name) {
+		if (current.locals.size() == MAX_LOCALS) {
+			reporter.error(name, "Too many local variables in function.");
+		}
+
+		Local local = new Local(name.lexeme(), current.scopeDepth);
+		current.locals.add(local);
+		return local;
+	}
+
+	private int resolveLocal(FunctionState state, Token name) {
+		for (int i = state.locals.size() - 1; i >= 0; --i) {
+			Local local = state.locals.get(i);
+			if (local.depth != -1 && local.name.equals(name.lexeme())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int resolveUpvalue(FunctionState state, Token name) {
+		if (state.enclosing == null) { return -1; }
+
+		int local = resolveLocal(state.enclosing, name);
+		if (local != -1) {
+			state.enclosing.locals.get(local).captured = true;
+			return addUpvalue(state, local, true, name);
+		}
+
+		int upvalue = resolveUpvalue(state.enclosing, name);
+		if (upvalue != -1) {
+			return addUpvalue(state, upvalue, false, name);
+		}
+
+		return -1;
+	}
+
+	private int addUpvalue(FunctionState state, int index, boolean isLocal, Token name) {
+		for (int i = 0; i < state.upvalues.size(); ++i) {
+			UpvalueRef upvalue = state.upvalues.get(i);
+			if (upvalue.index == index && upvalue.isLocal == isLocal) {
+				return i;
+			}
+		}
+
+		if (state.upvalues.size() == MAX_UPVALUES) {
+			reporter.error(name, "Too many closure variables in function.");
+			return 0;
+		}
+
+		state.upvalues.add(new UpvalueRef(index, isLocal));
+		return state.upvalues.size() - 1;
+	}
+
+	private void beginScope() {
+		++current.scopeDepth;
+	}
+
+	private void endScope() {
+		--current.scopeDepth;
+
+		List<Local> locals = current.locals;
+		while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+			Local local = locals.remove(locals.size() - 1);
+			emit(local.captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+		}
+	}
+
+	private CompiledFunction endFunction() {
+		emit(OpCode.NIL);
+		emit(OpCode.RETURN);
+
+		CompiledFunction function = current.function;
+		function.upvalueCount = current.upvalues.size();
+		function.chunk.trim();
+		current = current.enclosing;
+		return function;
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+
+	// Evaluates an expression for its effects only. Assigning a local is the
+	// commonest statement in a loop, so it stores and pops in one instruction.
+	private void discard(Expr expr) {
+		if (expr instanceof Expr.Assign) {
+			Expr.Assign assign = (Expr.Assign) expr;
+			int slot = resolveLocal(current, assign.name);
+			if (slot != -1) {
+				compile(assign.value);
+				line = assign.name.line;
+				emit(OpCode.STORE_LOCAL);
+				emit(slot);
+				return;
+			}
+		}
+
+		compile(expr);
+		emit(OpCode.POP);
+	}
+
+	private int makeConstant(Object value) {
+		Chunk chunk = current.function.chunk;
+		if (chunk.constantCount == MAX_CONSTANTS) {
+			reporter.error(line, "Too many constants in one chunk.");
+			return 0;
+		}
+		return chunk.addConstant(value);
+	}
+
+	private void emit(int value) {
+		current.function.chunk.write(value, line);
+	}
+
+	private void emitShort(int value) {
+		emit((value >> 8) & 0xff);
+		emit(value & 0xff);
+	}
+
+	private int emitJump(int op) {
+		emit(op);
+		emitShort(0xffff);
+		return current.function.chunk.count - 2;
+	}
+
+	private void patchJump(int offset) {
+		Chunk chunk = current.function.chunk;
+		int jump = chunk.count - offset - 2;
+		if (jump > MAX_JUMP) {
+			reporter.error(line, "Too much code to jump over.");
+		}
+
+		chunk.code[offset] = (byte) ((jump >> 8) & 0xff);
+		chunk.code[offset + 1] = (byte) (jump & 0xff);
+	}
+
+	private void emitLoop(int loopStart) {
+		emit(OpCode.LOOP_IF_TRUE);
+
+		int offset = current.function.chunk.count - loopStart + 2;
+		if (offset > MAX_JUMP) {
+			reporter.error(line, "Loop body too large.");
+		}
+		emitShort(offset);
+	}
+}
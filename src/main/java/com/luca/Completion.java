@@ -0,0 +1,24 @@
+package com.luca;
+
+// How a statement finished. Blocks hand anything but NORMAL straight back to
+// their caller; loops consume BREAK and CONTINUE, and function calls consume
+// RETURN, so early exits unwind without throwing.
+final class Completion {
+	enum Kind { NORMAL, BREAK, CONTINUE, RETURN }
+
+	static final Completion NORMAL = new Completion(Kind.NORMAL, null);
+	static final Completion BREAK = new Completion(Kind.BREAK, null);
+	static final Completion CONTINUE = new Completion(Kind.CONTINUE, null);
+
+	final Kind kind;
+	final Object value;
+
+	private Completion(Kind kind, Object value) {
+		this.kind = kind;
+		this.value = value;
+	}
+
+	static Completion returning(Object value) {
+		return new Completion(Kind.RETURN, value);
+	}
+}
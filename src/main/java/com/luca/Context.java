@@ -0,0 +1,135 @@
+package com.luca;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+// One tenant's interpreter state: globals, inline caches, JIT tiering and the
+// stream `print` writes to. Contexts share nothing, so each thread can run
+// its own, but a single Context must only be used by one thread at a time.
+// Programs run on the same Context see each other's globals.
+//
+// A run whose own code succeeded but left tasks that failed unawaited throws
+// their runtime errors, so the command line exits 70 for them too. If the run
+// stopped on an error of its own, that's the one thrown, and the tasks' go to
+// the Context's ErrorReporter, which by default echoes them to System.err.
+public class Context {
+	private final Luca.Backend backend;
+	private final ErrorReporter reporter;
+	private Interpreter interpreter;
+	private VM vm;
+	private NodeInterpreter nodeInterpreter;
+	private ClosureInterpreter closureInterpreter;
+
+	public Context(PrintStream out) {
+		this(Luca.Backend.INTERPRETER, out);
+	}
+
+	public Context(Luca.Backend backend, PrintStream out) {
+		this(backend, out, true);
+	}
+
+	Context(Luca.Backend backend, PrintStream out, boolean jit) {
+		this(backend, out, jit, new ErrorReporter(System.err));
+	}
+
+	Context(Luca.Backend backend, PrintStream out, boolean jit, ErrorReporter reporter) {
+		this.backend = backend;
+		this.reporter = reporter;
+		switch (backend) {
+			case VM:
+				vm = new VM(out);
+				break;
+			case NODES:
+				nodeInterpreter = new NodeInterpreter(out);
+				break;
+			case CLOSURES:
+				closureInterpreter = new ClosureInterpreter(out);
+				break;
+			default:
+				interpreter = new Interpreter(out, jit);
+		}
+	}
+
+	// A tree-walking Context whose globals are the given map, so a
+	// ScriptEngine's bindings and the script's globals are one and the same.
+	Context(Map<String, Object> globals, PrintStream out, ErrorReporter reporter) {
+		this.backend = Luca.Backend.INTERPRETER;
+		this.reporter = reporter;
+		interpreter = new Interpreter(out, true, globals);
+	}
+
+	public void run(Program program) throws LucaException {
+		if (program.backend != backend) {
+			throw new IllegalArgumentException("Program is compiled for " + program.backend + ", not " + backend + ".");
+		}
+
+		try {
+			switch (backend) {
+				case VM:
+					vm.interpret(program.script);
+					break;
+				case NODES:
+					nodeInterpreter.interpret(program.statements);
+					break;
+				case CLOSURES:
+					closureInterpreter.interpret(program.statements);
+					break;
+				default:
+					interpreter.interpret(program);
+			}
+		} catch (RuntimeError error) {
+			reportUnawaitedTasks();
+			throw LucaException.of(error);
+		}
+		failUnawaitedTasks();
+	}
+
+	// Calls a function, method or class from Java, with the checks a call
+	// expression makes. Tree-walker only.
+	Object call(LucaCallable callable, List<Object> arguments) throws LucaException {
+		if (arguments.size() != callable.arity()) {
+			throw new LucaException("Expected " + callable.arity() + " arguments but got " + arguments.size() + ".", -1);
+		}
+
+		Object result;
+		try {
+			result = callable.call(interpreter, arguments);
+		} catch (RuntimeError error) {
+			reportUnawaitedTasks();
+			throw LucaException.of(error);
+		}
+		failUnawaitedTasks();
+		return result;
+	}
+
+	// A run that stopped on its own runtime error throws that one, and the
+	// reporter gets those of its unawaited tasks. Only the tree-walker spawns
+	// tasks.
+	private void reportUnawaitedTasks() {
+		if (interpreter == null) { return; }
+		for (RuntimeError error : interpreter.takeUnawaitedErrors()) {
+			reporter.error(error.line, "Unawaited task failed: " + error.getMessage());
+		}
+	}
+
+	// A run that otherwise succeeded fails with the errors of its unawaited
+	// tasks, each in the runtime error format.
+	private void failUnawaitedTasks() throws LucaException {
+		if (interpreter == null) { return; }
+		List<RuntimeError> errors = interpreter.takeUnawaitedErrors();
+		if (errors.isEmpty()) { return; }
+
+		StringBuilder message = new StringBuilder();
+		for (RuntimeError error : errors) {
+			if (message.length() > 0) { message.append('\n'); }
+			message.append("Unawaited task failed: ").append(error.getMessage()).append("\n[line ").append(error.line).append(']');
+		}
+		throw new LucaException(message.toString(), errors.get(0).line);
+	}
+
+	// tree-walker only, for --ic-stats
+	Interpreter interpreter() {
+		return interpreter;
+	}
+}
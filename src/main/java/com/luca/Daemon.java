@@ -0,0 +1,139 @@
+package com.luca;
+
+import jdk.net.ExtendedSocketOptions;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+
+// `luca --daemon` keeps one warmed-up JVM resident and runs scripts sent by
+// DaemonClient over a Unix domain socket, saving the launcher a JVM start and
+// class loading per script.
+//
+// A request is the client's command line: an int count, then each argument
+// as modified UTF-8, with the script path already absolute. The response is
+// a sequence of frames, a kind byte then an int length and that many bytes of
+// stdout or stderr, ended by an EXIT frame carrying the status in place of
+// the length. Every request runs on its own thread through a fresh Luca
+// writing to that connection, so scripts don't share state or output.
+//
+// Only the user running the daemon may send it scripts: the socket file is
+// made owner-only, and connections whose peer credentials name another user
+// are closed unanswered.
+class Daemon {
+	static final byte EXIT = 0;
+	static final byte STDOUT = 1;
+	static final byte STDERR = 2;
+
+	// $LUCA_SOCKET, or ~/.cache/luca/daemon.sock when that isn't set
+	static Path socket() {
+		String configured = System.getenv("LUCA_SOCKET");
+		if (configured != null) {
+			return Paths.get(configured);
+		}
+		return Paths.get(System.getProperty("user.home"), ".cache", "luca", "daemon.sock");
+	}
+
+	static void serve(Path socket) throws IOException {
+		Path directory = socket.toAbsolutePath().getParent();
+		if (directory != null) { Files.createDirectories(directory); }
+		Files.deleteIfExists(socket);
+
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socket));
+			socket.toFile().deleteOnExit();
+			Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+			UserPrincipal owner = Files.getOwner(socket);
+			System.err.println("luca daemon listening on " + socket);
+
+			while (true) {
+				SocketChannel client = server.accept();
+				UserPrincipal peer = client.getOption(ExtendedSocketOptions.SO_PEERCRED).user();
+				if (!peer.equals(owner)) {
+					System.err.println("luca daemon: refused a connection from " + peer.getName());
+					client.close();
+					continue;
+				}
+				Thread worker = new Thread(() -> {
+					try (client) {
+						handle(client);
+					} catch (IOException e) {
+						System.err.println("luca daemon: " + e.getMessage());
+					}
+				}, "luca-daemon-worker");
+				worker.setDaemon(true);
+				worker.start();
+			}
+		}
+	}
+
+	private static void handle(SocketChannel client) throws IOException {
+		DataInputStream request = new DataInputStream(Channels.newInputStream(client));
+		String[] args = new String[request.readInt()];
+		for (int i = 0; i < args.length; ++i) {
+			args[i] = request.readUTF();
+		}
+
+		DataOutputStream response = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+		PrintStream stdout = new PrintStream(new BufferedOutputStream(new Frames(response, STDOUT)), true);
+		PrintStream stderr = new PrintStream(new BufferedOutputStream(new Frames(response, STDERR)), true);
+
+		int status;
+		try {
+			// without a script Luca would start a REPL on the daemon's stdin
+			boolean script = args.length > 0 && !args[args.length - 1].startsWith("--");
+			status = script ? new Luca(stdout, stderr).launch(args) : 64;
+		} catch (Exception | Error e) {
+			// what the JVM would have printed and exited with
+			e.printStackTrace(stderr);
+			status = 1;
+		}
+
+		stdout.flush();
+		stderr.flush();
+		response.writeByte(EXIT);
+		response.writeInt(status);
+		response.flush();
+	}
+
+	// Wraps everything written to it in frames of one kind.
+	private static class Frames extends OutputStream {
+		private final DataOutputStream response;
+		private final byte kind;
+
+		Frames(DataOutputStream response, byte kind) {
+			this.response = response;
+			this.kind = kind;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			response.writeByte(kind);
+			response.writeInt(length);
+			response.write(bytes, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			response.flush();
+		}
+	}
+}
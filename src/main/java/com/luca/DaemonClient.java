@@ -0,0 +1,72 @@
+package com.luca;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Entry point the launcher uses while a daemon is running: hands the command
+// line to it and replays the script's output and exit status. When there's
+// no script to send (the REPL) or nothing is listening it exits with
+// UNAVAILABLE, and the launcher runs the script in a JVM of its own: this one
+// is started for a quick handoff, with only the C1 compiler.
+public class DaemonClient {
+	static final int UNAVAILABLE = 75;
+
+	public static void main(String[] args) throws IOException {
+		Path socket = Daemon.socket();
+		boolean hasScript = args.length > 0 && !args[args.length - 1].startsWith("--");
+		if (!hasScript || !Files.exists(socket)) {
+			System.exit(UNAVAILABLE);
+		}
+
+		SocketChannel channel;
+		try {
+			channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+		} catch (IOException e) {
+			// a socket left behind by a daemon that is gone
+			System.exit(UNAVAILABLE);
+			return;
+		}
+
+		int status;
+		try (channel) {
+			DataOutputStream request = new DataOutputStream(Channels.newOutputStream(channel));
+			request.writeInt(args.length);
+			for (int i = 0; i < args.length - 1; ++i) {
+				request.writeUTF(args[i]);
+			}
+			// the daemon doesn't share our working directory
+			request.writeUTF(Paths.get(args[args.length - 1]).toAbsolutePath().toString());
+			request.flush();
+
+			status = relay(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+		}
+
+		System.out.flush();
+		System.err.flush();
+		if (status != 0) { System.exit(status); }
+	}
+
+	private static int relay(DataInputStream response) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (true) {
+			byte kind = response.readByte();
+			int length = response.readInt();
+			if (kind == Daemon.EXIT) { return length; }
+
+			OutputStream target = kind == Daemon.STDERR ? System.err : System.out;
+			if (buffer.length < length) { buffer = new byte[length]; }
+			response.readFully(buffer, 0, length);
+			target.write(buffer, 0, length);
+			target.flush();
+		}
+	}
+}
@@ -1,63 +1,67 @@
 package com.luca;
 
-import java.util.HashMap;
-import java.util.Map;
-
-
+// Slots are plain fields. A task sees everything its spawner wrote before
+// spawn, and await sees everything the task wrote, since both go through the
+// FutureTask; tasks that touch one variable with neither await nor a channel
+// between them race, and a racing read can see any value, even a PRIMITIVE
+// marker before the double it stands for.
 public class Environment {
+	// marks a slot whose current value lives unboxed in doubles
+	private static final Object PRIMITIVE = new Object();
+
 	final Environment enclosing;
-	private static final Map<String, Object> values = new HashMap<>();
+	private final Object[] values;
+	private double[] doubles;
 
-	Environment() {
-		this.enclosing = null;
+	Environment(Environment enclosing, int size) {
+		this.enclosing = enclosing;
+		this.values = new Object[size];
 	}
 
-	Environment(Environment enclosing) {
-		this.enclosing = enclosing;
+	Object getAt(int depth, int slot) {
+		Environment environment = ancestor(depth);
+		Object value = environment.values[slot];
+		return value == PRIMITIVE ? (Object) environment.doubles[slot] : value;
 	}
 
-	Object get(Token name) {
-		if (values.containsKey(name.lexeme)) {
-			return values.get(name.lexeme);
+	double getDoubleAt(int depth, int slot) throws UnexpectedResult {
+		Environment environment = ancestor(depth);
+		Object value = environment.values[slot];
+		if (value == PRIMITIVE) {
+			return environment.doubles[slot];
 		}
-
-		if (enclosing != null) {
-			return enclosing.get(name);
+		if (value instanceof Double) {
+			return (double) value;
 		}
-
-		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+		throw new UnexpectedResult(value);
 	}
 
-	Object getAt(int distance, String name) {
-		return ancestor(distance).values.get(name);
+	void assignAt(int depth, int slot, Object value) {
+		ancestor(depth).values[slot] = value;
 	}
 
-	void assignAt(int distance, Token name, Object value) {
-		ancestor(distance).values.put(name.lexeme, value);
+	void assignDoubleAt(int depth, int slot, double value) {
+		ancestor(depth).defineDouble(slot, value);
 	}
 
-	private Environment ancestor(int distance) {
+	private Environment ancestor(int depth) {
 		Environment environment = this;
-		for (int i = 0; i < distance; ++i) {
+		for (int i = 0; i < depth; ++i) {
 			environment = environment.enclosing;
 		}
 
 		return environment;
 	}
 
-	void define(String name, Object value) {
-		values.put(name, value);
+	void define(int slot, Object value) {
+		values[slot] = value;
 	}
 
-	void assign(Token name, Object value) {
-		if (values.containsKey(name.lexeme)) {
-			values.put(name.lexeme, value);
+	void defineDouble(int slot, double value) {
+		if (doubles == null) {
+			doubles = new double[values.length];
 		}
-
-		if (enclosing != null) {
-			enclosing.assign(name, value);
-		}
-
-		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+		doubles[slot] = value;
+		values[slot] = PRIMITIVE;
 	}
 }
@@ -0,0 +1,52 @@
+package com.luca;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Collects the compile errors of one scan, parse and resolve. The command line
+// echoes each error to stderr as it's reported; embedders read them back from
+// the LucaException instead. A Context also reports the errors of tasks that
+// were never awaited to one.
+class ErrorReporter {
+	private final PrintStream echo;
+	final List<String> errors = new ArrayList<>();
+	// line of the first error, -1 while there is none
+	int line = -1;
+
+	ErrorReporter() {
+		this(null);
+	}
+
+	ErrorReporter(PrintStream echo) {
+		this.echo = echo;
+	}
+
+	boolean hadError() {
+		return !errors.isEmpty();
+	}
+
+	void error(int line, String message) {
+		report(line, "", message);
+	}
+
+	void error(Token token, String message) {
+		if (token.type == TokenType.EOF) {
+			report(token.line, " at end", message);
+		}
+		else {
+			report(token.line, " at '" + token.lexeme() + "'", message);
+		}
+	}
+
+	private void report(int line, String where, String message) {
+		String error = "[line " + line + "] Error" + where + ": " + message;
+		if (errors.isEmpty()) { this.line = line; }
+		errors.add(error);
+		if (echo != null) { echo.println(error); }
+	}
+
+	LucaException toException() {
+		return new LucaException(String.join("\n", errors), line);
+	}
+}
@@ -25,6 +25,9 @@ abstract class Expr {
 	static class Assign extends Expr {
 		final Token name;
 		final Expr value;
+		// resolved by the Resolver; depth -1 marks a global
+		int depth = -1;
+		int slot = -1;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -49,6 +52,10 @@ abstract class Expr {
 		final Expr callee;
 		final Token paren;
 		final List<Expr> arguments;
+		// index of the call's inline cache, numbered by the Resolver
+		int site = -1;
+		// set by the Resolver when the call's result is returned as is
+		boolean tail = false;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -60,6 +67,7 @@ abstract class Expr {
 	static class Get extends Expr {
 		final Expr object;
 		final Token name;
+		int site = -1;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -104,6 +112,7 @@ abstract class Expr {
 		final Expr object;
 		final Token name;
 		final Expr value;
+		int site = -1;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -114,6 +123,9 @@ abstract class Expr {
 	@RequiredArgsConstructor
 	static class Variable extends Expr {
 		final Token name;
+		// resolved by the Resolver; depth -1 marks a global
+		int depth = -1;
+		int slot = -1;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
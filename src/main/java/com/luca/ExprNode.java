@@ -0,0 +1,520 @@
+package com.luca;
+
+import java.util.Map;
+
+abstract class ExprNode extends Node {
+	abstract Object execute(Environment frame);
+
+	// Unboxed entry point for parents that expect a number. Nodes that can
+	// produce a primitive double override it; the rest box and unbox here.
+	double executeDouble(Environment frame) throws UnexpectedResult {
+		return expectDouble(execute(frame));
+	}
+
+	// Entry point for statement position, where the result is discarded.
+	void executeVoid(Environment frame) {
+		execute(frame);
+	}
+
+	static double expectDouble(Object value) throws UnexpectedResult {
+		if (value instanceof Double) {
+			return (double) value;
+		}
+		throw new UnexpectedResult(value);
+	}
+
+	static class Literal extends ExprNode {
+		final Object value;
+
+		Literal(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			return value;
+		}
+	}
+
+	static class ReadLocal extends ExprNode {
+		final int depth;
+		final int slot;
+
+		ReadLocal(int depth, int slot) {
+			this.depth = depth;
+			this.slot = slot;
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			return frame.getAt(depth, slot);
+		}
+
+		@Override
+		double executeDouble(Environment frame) throws UnexpectedResult {
+			return frame.getDoubleAt(depth, slot);
+		}
+	}
+
+	// Local writes speculate on the first value they store: numbers go into the
+	// frame's unboxed storage until a non-number shows up.
+	abstract static class WriteLocal extends ExprNode {
+		final int depth;
+		final int slot;
+		ExprNode value;
+
+		WriteLocal(int depth, int slot, ExprNode value) {
+			this.depth = depth;
+			this.slot = slot;
+			this.value = adopt(value);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) { value = (ExprNode) newChild; }
+		}
+	}
+
+	static class UninitializedWriteLocal extends WriteLocal {
+		UninitializedWriteLocal(int depth, int slot, ExprNode value) {
+			super(depth, slot, value);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object result = value.execute(frame);
+			if (result instanceof Double) {
+				replace(new DoubleWriteLocal(depth, slot, value));
+				frame.assignDoubleAt(depth, slot, (double) result);
+			}
+			else {
+				replace(new GenericWriteLocal(depth, slot, value));
+				frame.assignAt(depth, slot, result);
+			}
+			return result;
+		}
+	}
+
+	static class DoubleWriteLocal extends WriteLocal {
+		DoubleWriteLocal(int depth, int slot, ExprNode value) {
+			super(depth, slot, value);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			try {
+				return executeDouble(frame);
+			} catch (UnexpectedResult unexpected) {
+				return unexpected.result;
+			}
+		}
+
+		@Override
+		double executeDouble(Environment frame) throws UnexpectedResult {
+			try {
+				double result = value.executeDouble(frame);
+				frame.assignDoubleAt(depth, slot, result);
+				return result;
+			} catch (UnexpectedResult unexpected) {
+				replace(new GenericWriteLocal(depth, slot, value));
+				frame.assignAt(depth, slot, unexpected.result);
+				throw unexpected;
+			}
+		}
+
+		@Override
+		void executeVoid(Environment frame) {
+			try {
+				executeDouble(frame);
+			} catch (UnexpectedResult ignored) {
+				// already stored generically
+			}
+		}
+	}
+
+	static class GenericWriteLocal extends WriteLocal {
+		GenericWriteLocal(int depth, int slot, ExprNode value) {
+			super(depth, slot, value);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object result = value.execute(frame);
+			frame.assignAt(depth, slot, result);
+			return result;
+		}
+	}
+
+	static class ReadGlobal extends ExprNode {
+		final Token name;
+		final Map<String, Object> globals;
+
+		ReadGlobal(Token name, Map<String, Object> globals) {
+			this.name = name;
+			this.globals = globals;
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object value = globals.get(name.lexeme());
+			if (value == null && !globals.containsKey(name.lexeme())) {
+				throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+			}
+			return value;
+		}
+	}
+
+	static class WriteGlobal extends ExprNode {
+		final Token name;
+		final Map<String, Object> globals;
+		ExprNode value;
+
+		WriteGlobal(Token name, Map<String, Object> globals, ExprNode value) {
+			this.name = name;
+			this.globals = globals;
+			this.value = adopt(value);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object result = value.execute(frame);
+			if (!globals.containsKey(name.lexeme())) {
+				throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+			}
+			globals.put(name.lexeme(), result);
+			return result;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) { value = (ExprNode) newChild; }
+		}
+	}
+
+	static class And extends ExprNode {
+		ExprNode left;
+		ExprNode right;
+
+		And(ExprNode left, ExprNode right) {
+			this.left = adopt(left);
+			this.right = adopt(right);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object leftValue = left.execute(frame);
+			if (!Interpreter.isTruthy(leftValue)) { return leftValue; }
+			return right.execute(frame);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (left == oldChild) { left = (ExprNode) newChild; }
+			if (right == oldChild) { right = (ExprNode) newChild; }
+		}
+	}
+
+	static class Or extends ExprNode {
+		ExprNode left;
+		ExprNode right;
+
+		Or(ExprNode left, ExprNode right) {
+			this.left = adopt(left);
+			this.right = adopt(right);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object leftValue = left.execute(frame);
+			if (Interpreter.isTruthy(leftValue)) { return leftValue; }
+			return right.execute(frame);
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (left == oldChild) { left = (ExprNode) newChild; }
+			if (right == oldChild) { right = (ExprNode) newChild; }
+		}
+	}
+
+	static class Not extends ExprNode {
+		ExprNode operand;
+
+		Not(ExprNode operand) {
+			this.operand = adopt(operand);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			return !Interpreter.isTruthy(operand.execute(frame));
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (operand == oldChild) { operand = (ExprNode) newChild; }
+		}
+	}
+
+	// Negation follows the same uninitialized -> double -> generic lifecycle as BinaryNode.
+	abstract static class Negate extends ExprNode {
+		final Token operator;
+		ExprNode operand;
+
+		Negate(Token operator, ExprNode operand) {
+			this.operator = operator;
+			this.operand = adopt(operand);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			return apply(operand.execute(frame));
+		}
+
+		abstract Object apply(Object value);
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (operand == oldChild) { operand = (ExprNode) newChild; }
+		}
+	}
+
+	static class UninitializedNegate extends Negate {
+		UninitializedNegate(Token operator, ExprNode operand) {
+			super(operator, operand);
+		}
+
+		@Override
+		Object apply(Object value) {
+			Negate specialized = value instanceof Double
+							? new DoubleNegate(operator, operand)
+							: new GenericNegate(operator, operand);
+			return replace(specialized).apply(value);
+		}
+	}
+
+	static class DoubleNegate extends Negate {
+		DoubleNegate(Token operator, ExprNode operand) {
+			super(operator, operand);
+		}
+
+		@Override
+		Object apply(Object value) {
+			if (value instanceof Double) {
+				return -(double) value;
+			}
+			return replace(new GenericNegate(operator, operand)).apply(value);
+		}
+
+		@Override
+		double executeDouble(Environment frame) throws UnexpectedResult {
+			try {
+				return -operand.executeDouble(frame);
+			} catch (UnexpectedResult unexpected) {
+				return expectDouble(replace(new GenericNegate(operator, operand)).apply(unexpected.result));
+			}
+		}
+	}
+
+	static class GenericNegate extends Negate {
+		GenericNegate(Token operator, ExprNode operand) {
+			super(operator, operand);
+		}
+
+		@Override
+		Object apply(Object value) {
+			return Interpreter.applyUnary(operator, value);
+		}
+	}
+
+	// Calls pass up to three arguments without an array, see LucaCallable, so
+	// each arity gets its own node. The deepest call catches a Java stack
+	// overflow and reports it at its line, as the VM does; the calls it unwinds
+	// through let the RuntimeError pass.
+	abstract static class Call extends ExprNode {
+		final Token paren;
+		final CallCache cache;
+		ExprNode callee;
+		final ExprNode[] arguments;
+
+		Call(Token paren, ExprNode callee, ExprNode[] arguments) {
+			this.paren = paren;
+			this.cache = new CallCache(paren);
+			this.callee = adopt(callee);
+			this.arguments = arguments;
+			for (ExprNode argument : arguments) {
+				adopt(argument);
+			}
+		}
+
+		static Call create(Token paren, ExprNode callee, ExprNode[] arguments) {
+			switch (arguments.length) {
+				case 0: return new Call0(paren, callee, arguments);
+				case 1: return new Call1(paren, callee, arguments);
+				case 2: return new Call2(paren, callee, arguments);
+				case 3: return new Call3(paren, callee, arguments);
+				default: return new CallN(paren, callee, arguments);
+			}
+		}
+
+		RuntimeError stackOverflow() {
+			return new RuntimeError(paren, "Stack overflow.");
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (callee == oldChild) { callee = (ExprNode) newChild; }
+			for (int i = 0; i < arguments.length; ++i) {
+				if (arguments[i] == oldChild) { arguments[i] = (ExprNode) newChild; }
+			}
+		}
+	}
+
+	static class Call0 extends Call {
+		Call0(Token paren, ExprNode callee, ExprNode[] arguments) {
+			super(paren, callee, arguments);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object function = callee.execute(frame);
+			try {
+				return cache.check(function, 0).call0(null);
+			} catch (StackOverflowError error) {
+				throw stackOverflow();
+			}
+		}
+	}
+
+	static class Call1 extends Call {
+		Call1(Token paren, ExprNode callee, ExprNode[] arguments) {
+			super(paren, callee, arguments);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object function = callee.execute(frame);
+			Object a = arguments[0].execute(frame);
+			try {
+				return cache.check(function, 1).call1(null, a);
+			} catch (StackOverflowError error) {
+				throw stackOverflow();
+			}
+		}
+	}
+
+	static class Call2 extends Call {
+		Call2(Token paren, ExprNode callee, ExprNode[] arguments) {
+			super(paren, callee, arguments);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object function = callee.execute(frame);
+			Object a = arguments[0].execute(frame);
+			Object b = arguments[1].execute(frame);
+			try {
+				return cache.check(function, 2).call2(null, a, b);
+			} catch (StackOverflowError error) {
+				throw stackOverflow();
+			}
+		}
+	}
+
+	static class Call3 extends Call {
+		Call3(Token paren, ExprNode callee, ExprNode[] arguments) {
+			super(paren, callee, arguments);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object function = callee.execute(frame);
+			Object a = arguments[0].execute(frame);
+			Object b = arguments[1].execute(frame);
+			Object c = arguments[2].execute(frame);
+			try {
+				return cache.check(function, 3).call3(null, a, b, c);
+			} catch (StackOverflowError error) {
+				throw stackOverflow();
+			}
+		}
+	}
+
+	static class CallN extends Call {
+		CallN(Token paren, ExprNode callee, ExprNode[] arguments) {
+			super(paren, callee, arguments);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object function = callee.execute(frame);
+			Object[] values = new Object[arguments.length];
+			for (int i = 0; i < values.length; ++i) {
+				values[i] = arguments[i].execute(frame);
+			}
+			try {
+				return cache.check(function, values.length).callN(null, values);
+			} catch (StackOverflowError error) {
+				throw stackOverflow();
+			}
+		}
+	}
+
+	static class Get extends ExprNode {
+		final Token name;
+		final PropertyCache cache;
+		ExprNode object;
+
+		Get(Token name, ExprNode object) {
+			this.name = name;
+			this.cache = new PropertyCache("get", name);
+			this.object = adopt(object);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object receiver = object.execute(frame);
+			if (receiver instanceof LucaInstance) {
+				return cache.get((LucaInstance) receiver);
+			}
+
+			throw new RuntimeError(name, "Only instances have properties.");
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (object == oldChild) { object = (ExprNode) newChild; }
+		}
+	}
+
+	static class Set extends ExprNode {
+		final Token name;
+		final PropertyCache cache;
+		ExprNode object;
+		ExprNode value;
+
+		Set(Token name, ExprNode object, ExprNode value) {
+			this.name = name;
+			this.cache = new PropertyCache("set", name);
+			this.object = adopt(object);
+			this.value = adopt(value);
+		}
+
+		@Override
+		Object execute(Environment frame) {
+			Object receiver = object.execute(frame);
+			if (!(receiver instanceof LucaInstance)) {
+				throw new RuntimeError(name, "Only instances have fields.");
+			}
+
+			Object result = value.execute(frame);
+			cache.set((LucaInstance) receiver, result);
+			return result;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (object == oldChild) { object = (ExprNode) newChild; }
+			if (value == oldChild) { value = (ExprNode) newChild; }
+		}
+	}
+}
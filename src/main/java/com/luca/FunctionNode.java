@@ -0,0 +1,49 @@
+package com.luca;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Root of a function body in the node tree; shared by every closure created
+// from the same declaration, so specializations carry over between them.
+class FunctionNode {
+	private static final MethodHandle EXECUTE;
+
+	static {
+		try {
+			EXECUTE = MethodHandles.lookup().findVirtual(StmtNode.class, "execute",
+					MethodType.methodType(Completion.class, Environment.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	final String name;
+	final int arity;
+	final int slotCount;
+	final StmtNode body;
+
+	// Calls enter the body through a handle the JIT can't see through, so a
+	// call stays a call instead of inlining the callee's whole tree into the
+	// caller. Recursive functions otherwise compile into one huge method per
+	// call site, and the C2 time that costs outweighs the saved call.
+	final MethodHandle entry;
+
+	FunctionNode(String name, int arity, int slotCount, StmtNode body) {
+		this.name = name;
+		this.arity = arity;
+		this.slotCount = slotCount;
+		this.body = body;
+		this.entry = EXECUTE.bindTo(body);
+	}
+
+	Completion execute(Environment frame) {
+		try {
+			return (Completion) entry.invokeExact(frame);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.luca;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The tree-walker's globals. Spawned tasks define and read them from other
+// threads, so they live in a ConcurrentHashMap; that can't hold null, so nil
+// is stored as a marker and turned back into null on the way out.
+class Globals extends AbstractMap<String, Object> {
+	private static final Object NIL = new Object();
+
+	private final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<>();
+
+	@Override
+	public Object get(Object name) {
+		return unwrap(values.get(name));
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		return values.containsKey(name);
+	}
+
+	@Override
+	public Object put(String name, Object value) {
+		return unwrap(values.put(name, value == null ? NIL : value));
+	}
+
+	@Override
+	public Object remove(Object name) {
+		return unwrap(values.remove(name));
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				Iterator<Entry<String, Object>> entries = values.entrySet().iterator();
+				return new Iterator<>() {
+					@Override
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+
+					@Override
+					public Entry<String, Object> next() {
+						Entry<String, Object> entry = entries.next();
+						return new SimpleImmutableEntry<>(entry.getKey(), unwrap(entry.getValue()));
+					}
+
+					@Override
+					public void remove() {
+						entries.remove();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return values.size();
+			}
+		};
+	}
+
+	private static Object unwrap(Object value) {
+		return value == NIL ? null : value;
+	}
+}
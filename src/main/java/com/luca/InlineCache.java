@@ -0,0 +1,37 @@
+package com.luca;
+
+// Per-site cache state shared by property and call caches. A site starts
+// uninitialized, holds up to MAX_ENTRIES receivers, and gives up caching
+// (goes megamorphic) once it sees more distinct receivers than that.
+abstract class InlineCache {
+	static final int MAX_ENTRIES = 4;
+
+	final String label;
+	final Token site;
+	long hits = 0;
+	long misses = 0;
+	boolean megamorphic = false;
+
+	InlineCache(String label, Token site) {
+		this.label = label;
+		this.site = site;
+	}
+
+	abstract int entryCount();
+
+	String state() {
+		if (megamorphic) { return "megamorphic"; }
+
+		switch (entryCount()) {
+			case 0: return "uninitialized";
+			case 1: return "monomorphic";
+			default: return "polymorphic";
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "[line " + site.line + "] " + label + ": " + state()
+						+ ", " + hits + " hits, " + misses + " misses";
+	}
+}
@@ -2,179 +2,302 @@ package com.luca;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-	final Environment globals = new Environment();
-	private Environment environment = globals;
-	private final Map<Expr, Integer> locals = new HashMap<>();
-
-	Interpreter() {
-		globals.define("clock", new LucaCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
+	static final Native CLOCK = new Native(0) {
+		@Override
+		Object call(Object[] arguments) {
+			return (double)System.currentTimeMillis() / 1000.0;
+		}
+	};
 
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				return (double)System.currentTimeMillis() / 1000.0;
-			}
+	// monotonic and nanosecond-resolution, for timing inside scripts
+	static final Native CLOCK_NANOS = new Native(0) {
+		@Override
+		Object call(Object[] arguments) {
+			return (double)System.nanoTime();
+		}
+	};
+
+	final Map<String, Object> globals;
+	// null while executing top-level code, whose variables live in globals
+	private Environment environment = null;
+	// Inline caches are this interpreter's own, since the AST may be shared
+	// with other threads; they're indexed by the site number the Resolver gave
+	// each call, get and set. Every Program numbers its sites from 0, so each
+	// one run here gets a table of its own, and `sites` is the table of the
+	// code that's running: functions carry the table they were declared with
+	// and switch to it on entry, see enter().
+	private final Map<Program, Sites> programSites = new WeakHashMap<>();
+	// this interpreter's copies of tables that belong to another one, such as
+	// a forked task's of its parent's
+	private final Map<Sites, Sites> copies = new HashMap<>();
+	Sites sites = null;
+	// the function whose body is being interpreted, charged for loop back-edges
+	LucaFunction activeFunction = null;
+	private final PrintStream out;
+	final boolean jit;
+	// tasks that failed before anyone awaited them; shared with forks
+	final Set<Tasks.Task> unawaited;
+
+	Interpreter(PrintStream out, boolean jit) {
+		this(out, jit, new Globals());
+	}
+
+	Interpreter(PrintStream out, boolean jit, Map<String, Object> globals) {
+		this.out = out;
+		this.jit = jit;
+		this.globals = globals;
+		this.unawaited = ConcurrentHashMap.newKeySet();
+		globals.put("clock", CLOCK);
+		globals.put("clockNanos", CLOCK_NANOS);
+		globals.put("spawn", Tasks.SPAWN);
+		globals.put("await", Tasks.AWAIT);
+		globals.put("channel", Channels.CHANNEL);
+		globals.put("send", Channels.SEND);
+		globals.put("receive", Channels.RECEIVE);
+		globals.put("close", Channels.CLOSE);
+		globals.put("trySend", Channels.TRY_SEND);
+		globals.put("tryReceive", Channels.TRY_RECEIVE);
+		globals.put("drained", Channels.DRAINED);
+	}
+
+	// Fresh call state for a spawned task, sharing the globals and output.
+	// The globals must be safe to share: Globals is, a caller's map may not be.
+	private Interpreter(Interpreter parent) {
+		this.out = parent.out;
+		this.jit = parent.jit;
+		this.globals = parent.globals;
+		this.unawaited = parent.unawaited;
+	}
+
+	Interpreter fork() {
+		return new Interpreter(this);
+	}
+
+	// Hands over the error of each task that failed unawaited, once; awaiting
+	// it later still rethrows its error.
+	List<RuntimeError> takeUnawaitedErrors() {
+		List<RuntimeError> errors = new ArrayList<>();
+		for (Iterator<Tasks.Task> tasks = unawaited.iterator(); tasks.hasNext(); ) {
+			errors.add(tasks.next().error);
+			tasks.remove();
+		}
+		return errors;
+	}
 
-			@Override
-			public String toString() {
-				return "<native fn>";
-			}
-		});
+	void interpret(Program program) {
+		sites = programSites.computeIfAbsent(program, key -> new Sites(this));
+		for (Stmt statement : program.statements) {
+			execute(statement);
+		}
 	}
 
-	void interpret(List<Stmt> statements) {
-		try {
-			for (Stmt statement : statements) {
-				execute(statement);
-			}
-		} catch (RuntimeError error) {
-			Luca.runtimeError(error);
+	// One Program's inline caches on one interpreter. A copy made for another
+	// interpreter keeps the table it copies as its origin.
+	static final class Sites {
+		final Interpreter owner;
+		final Sites origin;
+		InlineCache[] caches = new InlineCache[16];
+
+		Sites(Interpreter owner) {
+			this.owner = owner;
+			this.origin = this;
+		}
+
+		private Sites(Interpreter owner, Sites origin) {
+			this.owner = owner;
+			this.origin = origin;
 		}
 	}
 
-	void resolve(Expr expr, int depth) {
-		locals.put(expr, depth);
+	// Makes current the caches for the Program a function was declared in,
+	// and returns the ones to restore when it returns.
+	Sites enter(Sites declared) {
+		Sites caller = sites;
+		if (caller == null || caller.origin != declared.origin) {
+			Sites origin = declared.origin;
+			sites = origin.owner == this ? origin : copies.computeIfAbsent(origin, key -> new Sites(this, key));
+		}
+		return caller;
 	}
 
 	@Override
-	public Void visitVarStmt(Stmt.Var stmt) {
+	public Completion visitVarStmt(Stmt.Var stmt) {
 		Object value = null;
 		if (stmt.initializer != null) {
 			value = evaluate(stmt.initializer);
 		}
 
-		environment.define(stmt.name.lexeme, value);
-		return null;
+		define(stmt.name, stmt.slot, value);
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitFunctionStmt(Stmt.Function stmt) {
-		LucaFunction function = new LucaFunction(stmt, environment);
-		environment.define(stmt.name.lexeme, function);
-		return null;
+	public Completion visitFunctionStmt(Stmt.Function stmt) {
+		LucaFunction function = new LucaFunction(stmt, environment, sites);
+		define(stmt.name, stmt.slot, function);
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitReturnStmt(Stmt.Return stmt) {
+	public Completion visitReturnStmt(Stmt.Return stmt) {
 		Object value = null;
 		if (stmt.value != null) {
 			value = evaluate(stmt.value);
 		}
 
-		throw new Return(value);
+		return Completion.returning(value);
+	}
+
+	@Override
+	public Completion visitBreakStmt(Stmt.Break stmt) {
+		return Completion.BREAK;
+	}
+
+	@Override
+	public Completion visitContinueStmt(Stmt.Continue stmt) {
+		return Completion.CONTINUE;
 	}
 
 	@Override
-	public Void visitIfStmt(Stmt.If stmt) {
-		if (isTruthy(stmt.condition)) {
-			execute(stmt.thenBranch);
+	public Completion visitIfStmt(Stmt.If stmt) {
+		if (isTruthy(evaluate(stmt.condition))) {
+			return execute(stmt.thenBranch);
 		}
 		else if (stmt.elseBranch != null) {
-			execute(stmt.elseBranch);
+			return execute(stmt.elseBranch);
 		}
-		return null;
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitPrintStmt(Stmt.Print stmt) {
-		Object value = evaluate(stmt.expression);
-		System.out.println(stringify(value));
-		return null;
+	public Completion visitPrintStmt(Stmt.Print stmt) {
+		print(evaluate(stmt.expression));
+		return Completion.NORMAL;
+	}
+
+	// also called by compiled code, so it prints to this interpreter's stream
+	void print(Object value) {
+		out.println(stringify(value));
 	}
 
 	@Override
-	public Void visitWhileStmt(Stmt.While stmt) {
+	public Completion visitWhileStmt(Stmt.While stmt) {
 		while (isTruthy(evaluate(stmt.condition))) {
-			execute(stmt.body);
+			Completion completion = execute(stmt.body);
+			if (completion == Completion.BREAK) { break; }
+			if (completion.kind == Completion.Kind.RETURN) { return completion; }
+
+			if (stmt.increment != null) {
+				evaluate(stmt.increment);
+			}
+
+			// back edge: a hot function finishes the call in compiled code
+			if (activeFunction != null && ++activeFunction.backEdges >= JitCompiler.BACK_EDGE_THRESHOLD) {
+				Completion compiled = activeFunction.enterLoop(this, stmt, environment);
+				if (compiled != null) { return compiled; }
+			}
 		}
-		return null;
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitBlockStmt(Stmt.Block stmt) {
-		executeBlock(stmt.statements, new Environment(this.environment));
-		return null;
+	public Completion visitBlockStmt(Stmt.Block stmt) {
+		return executeBlock(stmt.statements, new Environment(this.environment, stmt.slotCount));
 	}
 
-	void executeBlock(List<Stmt> statements, Environment environment) {
+	Completion executeBlock(List<Stmt> statements, Environment environment) {
 		Environment previous = this.environment;
 		try {
 			this.environment = environment;
 			for (Stmt statement : statements) {
-				execute(statement);
+				Completion completion = execute(statement);
+				if (completion != Completion.NORMAL) { return completion; }
 			}
+			return Completion.NORMAL;
 		} finally {
 			this.environment = previous;
 		}
 	}
 
 	@Override
-	public Void visitClassStmt(Stmt.Class stmt) {
-		environment.define(stmt.name.lexeme, null);
+	public Completion visitClassStmt(Stmt.Class stmt) {
+		define(stmt.name, stmt.slot, null);
 
-		Map<String, LucaFunction> methods = new HashMap<>();
+		Map<String, LucaCallable> methods = new HashMap<>();
 		for (Stmt.Function method : stmt.methods) {
-			LucaFunction function = new LucaFunction(method, environment);
-			methods.put(method.name.lexeme, function);
+			LucaFunction function = new LucaFunction(method, environment, sites);
+			methods.put(method.name.lexeme(), function);
 		}
 
-		LucaClass klass = new LucaClass(stmt.name.lexeme, methods);
-		environment.assign(stmt.name, klass);
-		return null;
+		LucaClass klass = new LucaClass(stmt.name.lexeme(), methods);
+		define(stmt.name, stmt.slot, klass);
+		return Completion.NORMAL;
 	}
 
 	@Override
-	public Void visitExpressionStmt(Stmt.Expression stmt) {
+	public Completion visitExpressionStmt(Stmt.Expression stmt) {
 		evaluate(stmt.expression);
-		return null;
+		return Completion.NORMAL;
 	}
 
 	@Override
 	public Object visitAssignExpr(Expr.Assign expr) {
 		Object value = evaluate(expr.value);
 
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			environment.assignAt(distance, expr.name, value);
+		if (expr.depth != -1) {
+			environment.assignAt(expr.depth, expr.slot, value);
 		}
 		else {
-			globals.assign(expr.name, value);
+			assignGlobal(expr.name, value);
 		}
 
 		return value;
 	}
 
+	void assignGlobal(Token name, Object value) {
+		if (!globals.containsKey(name.lexeme())) {
+			throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+		}
+		globals.put(name.lexeme(), value);
+	}
+
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
 		Object left = evaluate(expr.left);
 		Object right = evaluate(expr.right);
 
-		switch (expr.operator.type) {
+		return applyBinary(expr.operator, left, right);
+	}
+
+	static Object applyBinary(Token operator, Object left, Object right) {
+		switch (operator.type) {
 			case GREATER:
-				checkNumberOperand(expr.operator, left, right);
+				checkNumberOperand(operator, left, right);
 				return (double)left > (double)right;
 			case GREATER_EQUAL:
-				checkNumberOperand(expr.operator, left, right);
+				checkNumberOperand(operator, left, right);
 				return (double)left >= (double)right;
 			case LESS:
-				checkNumberOperand(expr.operator, left, right);
+				checkNumberOperand(operator, left, right);
 				return (double)left < (double)right;
 			case LESS_EQUAL:
-				checkNumberOperand(expr.operator, left, right);
+				checkNumberOperand(operator, left, right);
 				return (double)left <= (double)right;
 			case MINUS:
-				checkNumberOperand(expr.operator, left, right);
+				checkNumberOperand(operator, left, right);
 				return (double)left - (double)right;
 			case PLUS:
 				if (additionEligible(left, right)) {
@@ -184,13 +307,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					return (String)left + (String)right;
 				}
 				else {
-					throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings");
+					throw new RuntimeError(operator, "Operands must be two numbers or two strings");
 				}
 			case SLASH:
-				checkNumberOperand(expr.operator, left, right);
+				checkNumberOperand(operator, left, right);
 				return (double)left / (double)right;
 			case STAR:
-				checkNumberOperand(expr.operator, left, right);
+				checkNumberOperand(operator, left, right);
 				return (double)left * (double)right;
 			case BANG_EQUAL:
 				return !isEqual(left, right);
@@ -205,28 +328,107 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Object visitCallExpr(Expr.Call expr) {
 		Object callee = evaluate(expr.callee);
 
-		List<Object> arguments = new ArrayList<>();
-		for (Expr argument : expr.arguments) {
-			arguments.add(evaluate(argument));
+		List<Expr> arguments = expr.arguments;
+		if (expr.tail) { return tailCall(expr, callee, evaluateArguments(arguments)); }
+
+		// up to three arguments are passed without an array, see LucaCallable
+		switch (arguments.size()) {
+			case 0: return call0(expr, callee);
+			case 1: return call1(expr, callee, evaluate(arguments.get(0)));
+			case 2: return call2(expr, callee, evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+			case 3: return call3(expr, callee, evaluate(arguments.get(0)), evaluate(arguments.get(1)), evaluate(arguments.get(2)));
+			default: return callN(expr, callee, evaluateArguments(arguments));
+		}
+	}
+
+	private Object[] evaluateArguments(List<Expr> arguments) {
+		Object[] values = new Object[arguments.size()];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = evaluate(arguments.get(i));
+		}
+		return values;
+	}
+
+	// Calls by arity, also made by compiled code. A native's RuntimeError gets
+	// the line of the call.
+	Object call0(Expr.Call expr, Object callee) {
+		LucaCallable function = checkCall(expr, callee, 0);
+		try {
+			return function.call0(this);
+		} catch (RuntimeError error) {
+			throw error.at(expr.paren);
+		}
+	}
+
+	Object call1(Expr.Call expr, Object callee, Object a) {
+		LucaCallable function = checkCall(expr, callee, 1);
+		try {
+			return function.call1(this, a);
+		} catch (RuntimeError error) {
+			throw error.at(expr.paren);
+		}
+	}
+
+	Object call2(Expr.Call expr, Object callee, Object a, Object b) {
+		LucaCallable function = checkCall(expr, callee, 2);
+		try {
+			return function.call2(this, a, b);
+		} catch (RuntimeError error) {
+			throw error.at(expr.paren);
+		}
+	}
+
+	Object call3(Expr.Call expr, Object callee, Object a, Object b, Object c) {
+		LucaCallable function = checkCall(expr, callee, 3);
+		try {
+			return function.call3(this, a, b, c);
+		} catch (RuntimeError error) {
+			throw error.at(expr.paren);
+		}
+	}
+
+	Object callN(Expr.Call expr, Object callee, Object[] arguments) {
+		LucaCallable function = checkCall(expr, callee, arguments.length);
+		try {
+			return function.callN(this, arguments);
+		} catch (RuntimeError error) {
+			throw error.at(expr.paren);
 		}
+	}
 
-		if (!(callee instanceof LucaCallable)) {
-			throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+	// A Luca function called in tail position isn't entered here: the TailCall
+	// is returned through the caller's body to the LucaFunction that entered
+	// it, which runs it in the same Java frame, so tail recursion uses
+	// constant stack.
+	Object tailCall(Expr.Call expr, Object callee, Object[] arguments) {
+		LucaCallable function = checkCall(expr, callee, arguments.length);
+		if (function instanceof LucaFunction) {
+			return new TailCall((LucaFunction) function, arguments);
+		}
+		try {
+			return function.callN(this, arguments);
+		} catch (RuntimeError error) {
+			throw error.at(expr.paren);
 		}
-		LucaCallable function = (LucaCallable) callee;
+	}
 
-		if (arguments.size() != function.arity()) {
-			throw new RuntimeError(expr.paren, "Expected " + function.arity() + " arguments but got "
-			+ arguments.size() + ".");
+	private LucaCallable checkCall(Expr.Call expr, Object callee, int count) {
+		InlineCache[] caches = sites.caches;
+		InlineCache cache = expr.site < caches.length ? caches[expr.site] : null;
+		if (cache == null) {
+			cache = install(expr.site, new CallCache(expr.paren));
 		}
-		return function.call(this, arguments);
+		return ((CallCache) cache).check(callee, count);
 	}
 
 	@Override
 	public Object visitGetExpr(Expr.Get expr) {
-		Object object = evaluate(expr.object);
+		return getProperty(expr, evaluate(expr.object));
+	}
+
+	Object getProperty(Expr.Get expr, Object object) {
 		if (object instanceof LucaInstance) {
-			return ((LucaInstance) object).get(expr.name);
+			return propertyCache(expr.site, "get", expr.name).get((LucaInstance) object);
 		}
 
 		throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -258,14 +460,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitSetExpr(Expr.Set expr) {
-		Object object = evaluate(expr.object);
+		LucaInstance instance = fieldTarget(expr, evaluate(expr.object));
+		return setProperty(expr, instance, evaluate(expr.value));
+	}
 
+	LucaInstance fieldTarget(Expr.Set expr, Object object) {
 		if (!(object instanceof LucaInstance)) {
 			throw new RuntimeError(expr.name, "Only instances have fields.");
 		}
+		return (LucaInstance) object;
+	}
 
-		Object value = evaluate(expr.value);
-		((LucaInstance) object).set(expr.name, value);
+	Object setProperty(Expr.Set expr, LucaInstance instance, Object value) {
+		propertyCache(expr.site, "set", expr.name).set(instance, value);
 		return value;
 	}
 
@@ -273,11 +480,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Object visitUnaryExpr(Expr.Unary expr) {
 		Object right = evaluate(expr.right);
 
-		switch(expr.operator.type) {
+		return applyUnary(expr.operator, right);
+	}
+
+	static Object applyUnary(Token operator, Object right) {
+		switch(operator.type) {
 			case BANG:
 				return !isTruthy(right);
 			case MINUS:
-				checkNumberOperand(expr.operator, right);
+				checkNumberOperand(operator, right);
 				return -(double)right;
 		}
 
@@ -286,36 +497,80 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitVariableExpr(Expr.Variable expr) {
-		return lookUpVariable(expr.name, expr);
+		if (expr.depth != -1) {
+			return environment.getAt(expr.depth, expr.slot);
+		}
+
+		return lookupGlobal(expr.name);
 	}
 
-	private Object lookUpVariable(Token name, Expr expr) {
-		return Optional.ofNullable(locals.get(expr))
-						.map(distance -> environment.getAt(distance, name.lexeme))
-						.orElse(globals.get(name));
+	Object lookupGlobal(Token name) {
+		Object value = globals.get(name.lexeme());
+		if (value == null && !globals.containsKey(name.lexeme())) {
+			throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+		}
+		return value;
+	}
+
+	private void define(Token name, int slot, Object value) {
+		if (slot == -1) {
+			globals.put(name.lexeme(), value);
+		}
+		else {
+			environment.define(slot, value);
+		}
+	}
+
+	private PropertyCache propertyCache(int site, String kind, Token name) {
+		InlineCache[] caches = sites.caches;
+		InlineCache cache = site < caches.length ? caches[site] : null;
+		if (cache == null) {
+			cache = install(site, new PropertyCache(kind, name));
+		}
+		return (PropertyCache) cache;
+	}
+
+	private InlineCache install(int site, InlineCache cache) {
+		InlineCache[] caches = sites.caches;
+		if (site >= caches.length) {
+			caches = sites.caches = Arrays.copyOf(caches, Math.max(site + 1, caches.length * 2));
+		}
+		caches[site] = cache;
+		return cache;
+	}
+
+	// the caches in use, in site order within each Program, for --ic-stats
+	List<InlineCache> inlineCaches() {
+		List<InlineCache> inUse = new ArrayList<>();
+		for (Sites table : programSites.values()) {
+			for (InlineCache cache : table.caches) {
+				if (cache != null) { inUse.add(cache); }
+			}
+		}
+		return inUse;
 	}
 
-	private void execute(Stmt stmt) {
-		stmt.accept(this);
+	private Completion execute(Stmt stmt) {
+		return stmt.accept(this);
 	}
 
 	private Object evaluate(Expr expr) {
 		return expr.accept(this);
 	}
 
-	private void checkNumberOperand(Token operator, Object operand) {
+	private static void checkNumberOperand(Token operator, Object operand) {
 		if (!(operand instanceof Double)) {
 			throw new RuntimeError(operator, "Operand must be a number.");
 		}
 	}
 
-	private void checkNumberOperand(Token operator, Object left, Object right) {
+	private static void checkNumberOperand(Token operator, Object left, Object right) {
 		if (!(left instanceof Double && right instanceof Double)) {
 			throw new RuntimeError(operator, "Operands must be numbers");
 		}
 	}
 
-	private boolean isTruthy(Object object) {
+	static boolean isTruthy(Object object) {
 		if (object == null) {
 			return false;
 		}
@@ -327,7 +582,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 	}
 
-	private boolean isEqual(Object left, Object right) {
+	static boolean isEqual(Object left, Object right) {
 		if (left == null && right == null) {
 			return true;
 		}
@@ -339,15 +594,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 	}
 
-	private boolean additionEligible(Object left, Object right) {
+	private static boolean additionEligible(Object left, Object right) {
 		return left instanceof Double && right instanceof Double;
 	}
 
-	private boolean concatEligible(Object left, Object right) {
+	private static boolean concatEligible(Object left, Object right) {
 		return left instanceof String && right instanceof String;
 	}
 
-	private String stringify(Object value) {
+	static String stringify(Object value) {
 		if (value == null) {
 			return "nil";
 		}
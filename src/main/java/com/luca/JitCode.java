@@ -0,0 +1,48 @@
+package com.luca;
+
+// The body of a hot LucaFunction, compiled by JitCompiler into a hidden class.
+// Compiled code overrides only the entry point for its function's arity,
+// callN for more than three parameters. The others check the argument count
+// and forward to that one, so any entry works for a call with the right count.
+abstract class JitCode {
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+
+	private final int arity;
+
+	JitCode(int arity) {
+		this.arity = arity;
+	}
+
+	Object call0(Interpreter interpreter, Environment closure) {
+		return callN(interpreter, closure, checked(NO_ARGUMENTS));
+	}
+
+	Object call1(Interpreter interpreter, Environment closure, Object a) {
+		return callN(interpreter, closure, checked(new Object[] {a}));
+	}
+
+	Object call2(Interpreter interpreter, Environment closure, Object a, Object b) {
+		return callN(interpreter, closure, checked(new Object[] {a, b}));
+	}
+
+	Object call3(Interpreter interpreter, Environment closure, Object a, Object b, Object c) {
+		return callN(interpreter, closure, checked(new Object[] {a, b, c}));
+	}
+
+	// Only reached for arities up to three, which have a fixed entry.
+	Object callN(Interpreter interpreter, Environment closure, Object[] arguments) {
+		switch (checked(arguments).length) {
+			case 0: return call0(interpreter, closure);
+			case 1: return call1(interpreter, closure, arguments[0]);
+			case 2: return call2(interpreter, closure, arguments[0], arguments[1]);
+			default: return call3(interpreter, closure, arguments[0], arguments[1], arguments[2]);
+		}
+	}
+
+	private Object[] checked(Object[] arguments) {
+		if (arguments.length != arity) {
+			throw new IllegalArgumentException("Compiled for " + arity + " arguments but called with " + arguments.length + ".");
+		}
+		return arguments;
+	}
+}
@@ -0,0 +1,670 @@
+package com.luca;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.luca.ClassFileWriter.*;
+
+// Second tier for the tree-walker. Once a LucaFunction is hot, its body is
+// translated to JVM bytecode and defined as a hidden class extending
+// JitCode, so HotSpot compiles it like any other Java method. A call still
+// interpreting a hot loop gets the same translation as an OsrCode, entered at
+// the top of that loop (on-stack replacement). Only function bodies are
+// compiled: loops in top-level code always stay interpreted.
+//
+// Locals live in JVM local variables instead of Environments, which is only
+// sound while nothing captures them: functions that declare nested functions
+// or classes are left to the tree-walker. Arithmetic and comparisons
+// speculate that their operands are numbers. A failed guard finishes the
+// operation generically and charges the function; after DEOPT_LIMIT failures
+// the compiled code is dropped and the function stays interpreted.
+class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	static final int INVOCATION_THRESHOLD = 1000;
+	static final int BACK_EDGE_THRESHOLD = 10000;
+	static final int DEOPT_LIMIT = 32;
+
+	private static final String OBJECT = "java/lang/Object";
+	private static final String DOUBLE = "java/lang/Double";
+	private static final String BOOLEAN = "java/lang/Boolean";
+	private static final String INTERPRETER = "com/luca/Interpreter";
+	private static final String ENVIRONMENT = "com/luca/Environment";
+	private static final String FUNCTION = "com/luca/LucaFunction";
+	private static final String TOKEN = "com/luca/Token";
+	private static final String JIT = "com/luca/JitCompiler";
+	private static final String JIT_CODE = "com/luca/JitCode";
+	private static final String OSR_CODE = "com/luca/OsrCode";
+	// calls with more arguments than this pass them in an array, see LucaCallable
+	private static final int MAX_FIXED_ARITY = 3;
+
+	// fixed JVM locals of the generated call method
+	private static final int THIS = 0;
+	private static final int INTERPRETER_ARG = 1;
+	private static final int CLOSURE_ARG = 2;
+	// the first parameter, or the array of them past MAX_FIXED_ARITY
+	private static final int ARGUMENTS_ARG = 3;
+	// resume() gets the environment of the interpreted loop instead
+	private static final int ENVIRONMENT_ARG = 3;
+
+	private static class Unsupported extends RuntimeException {}
+
+	private static class Loop {
+		final Label continueTarget;
+		final Label breakTarget;
+
+		Loop(Label continueTarget, Label breakTarget) {
+			this.continueTarget = continueTarget;
+			this.breakTarget = breakTarget;
+		}
+	}
+
+	private final String className;
+	private final ClassFileWriter classFile;
+	private ClassFileWriter.Code code;
+	private final List<Object> constants = new ArrayList<>();
+	private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+	// JVM local for each Resolver slot, innermost scope last
+	private final List<int[]> scopes = new ArrayList<>();
+	private final Deque<Loop> loops = new ArrayDeque<>();
+	// the loop an OsrCode starts in, or null for JitCode
+	private final Stmt.While entryLoop;
+	private Label loopEntry = null;
+	private boolean loopEntryPlaced = false;
+
+	private JitCompiler(String name, Stmt.While entryLoop) {
+		this.className = "com/luca/Jit$" + name;
+		this.classFile = new ClassFileWriter(className, entryLoop == null ? JIT_CODE : OSR_CODE);
+		this.entryLoop = entryLoop;
+	}
+
+	// Both return null when the function can't be compiled; callers keep
+	// interpreting it.
+	static JitCode compile(Stmt.Function declaration, LucaFunction owner) {
+		return (JitCode) define(new JitCompiler(declaration.name.lexeme(), null), declaration, owner);
+	}
+
+	static OsrCode compileLoop(Stmt.Function declaration, LucaFunction owner, Stmt.While loop) {
+		return (OsrCode) define(new JitCompiler(declaration.name.lexeme(), loop), declaration, owner);
+	}
+
+	private static Object define(JitCompiler compiler, Stmt.Function declaration, LucaFunction owner) {
+		try {
+			byte[] bytes = compiler.generate(declaration);
+
+			Class<?> hidden = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+			return hidden.getDeclaredConstructor(LucaFunction.class, Object[].class)
+							.newInstance(owner, compiler.constants.toArray());
+		} catch (Unsupported | IllegalStateException | ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	// Slow paths for failed speculation, called from compiled code.
+	static Object binaryFallback(LucaFunction owner, Token operator, Object left, Object right) {
+		owner.speculationFailed();
+		return Interpreter.applyBinary(operator, left, right);
+	}
+
+	static Object unaryFallback(LucaFunction owner, Token operator, Object right) {
+		owner.speculationFailed();
+		return Interpreter.applyUnary(operator, right);
+	}
+
+	private byte[] generate(Stmt.Function declaration) {
+		classFile.field(ACC_PRIVATE | ACC_FINAL, "owner", "L" + FUNCTION + ";");
+		classFile.field(ACC_PRIVATE | ACC_FINAL, "constants", "[Ljava/lang/Object;");
+		int arity = declaration.params.size();
+		constructor(arity);
+
+		if (entryLoop != null) {
+			// The body is compiled whole, but resume() jumps straight to the code
+			// that loads the loop's locals; what comes before it is never run.
+			String descriptor = "(L" + INTERPRETER + ";L" + ENVIRONMENT + ";L" + ENVIRONMENT + ";)L" + OBJECT + ";";
+			code = classFile.method(ACC_PUBLIC, "resume", descriptor, ENVIRONMENT_ARG + 1);
+			loopEntry = code.label();
+			code.jump(GOTO, loopEntry);
+			beginScope(declaration.slotCount);
+		}
+		else {
+			// only the JitCode entry point for this function's arity
+			boolean fixed = arity <= MAX_FIXED_ARITY;
+			String parameters = fixed ? ("L" + OBJECT + ";").repeat(arity) : "[L" + OBJECT + ";";
+			String descriptor = "(L" + INTERPRETER + ";L" + ENVIRONMENT + ";" + parameters + ")L" + OBJECT + ";";
+			code = classFile.method(ACC_PUBLIC, fixed ? "call" + arity : "callN", descriptor, ARGUMENTS_ARG + (fixed ? arity : 1));
+			int[] frame = beginScope(declaration.slotCount);
+			for (int i = 0; i < arity; ++i) {
+				if (fixed) {
+					code.load(ARGUMENTS_ARG + i);
+				}
+				else {
+					code.load(ARGUMENTS_ARG);
+					code.push(i);
+					code.op(AALOAD, -1);
+				}
+				code.store(frame[i]);
+			}
+		}
+		for (Stmt statement : declaration.body) {
+			compile(statement);
+		}
+		code.op(ACONST_NULL, 1);
+		code.terminate(ARETURN);
+		if (entryLoop != null && !loopEntryPlaced) { throw new Unsupported(); }
+		code.finish();
+
+		return classFile.toByteArray();
+	}
+
+	private void constructor(int arity) {
+		ClassFileWriter.Code init = classFile.method(ACC_PUBLIC, "<init>", "(L" + FUNCTION + ";[Ljava/lang/Object;)V", 3);
+		init.load(0);
+		if (entryLoop == null) {
+			init.push(arity);
+			init.invoke(INVOKESPECIAL, JIT_CODE, "<init>", "(I)V");
+		}
+		else {
+			init.invoke(INVOKESPECIAL, OSR_CODE, "<init>", "()V");
+		}
+		init.load(0);
+		init.load(1);
+		init.field(PUTFIELD, className, "owner", "L" + FUNCTION + ";");
+		init.load(0);
+		init.load(2);
+		init.field(PUTFIELD, className, "constants", "[Ljava/lang/Object;");
+		init.terminate(RETURN);
+		init.finish();
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		beginScope(stmt.slotCount);
+		for (Stmt statement : stmt.statements) {
+			compile(statement);
+		}
+		scopes.remove(scopes.size() - 1);
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		code.jump(GOTO, loops.peek().breakTarget);
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		throw new Unsupported();
+	}
+
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		code.jump(GOTO, loops.peek().continueTarget);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		compile(stmt.expression);
+		code.op(POP, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		throw new Unsupported();
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		Label elseBranch = code.label();
+		Label end = code.label();
+
+		condition(stmt.condition, elseBranch);
+		compile(stmt.thenBranch);
+		code.jump(GOTO, end);
+		code.place(elseBranch);
+		if (stmt.elseBranch != null) { compile(stmt.elseBranch); }
+		code.place(end);
+		return null;
+	}
+
+	@Override
+	public Void visitPrintStmt(Stmt.Print stmt) {
+		code.load(INTERPRETER_ARG);
+		compile(stmt.expression);
+		code.invoke(INVOKEVIRTUAL, INTERPRETER, "print", "(L" + OBJECT + ";)V");
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value != null) {
+			compile(stmt.value);
+		}
+		else {
+			code.op(ACONST_NULL, 1);
+		}
+		code.terminate(ARETURN);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		if (stmt.slot == -1) { throw new Unsupported(); }
+
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		}
+		else {
+			code.op(ACONST_NULL, 1);
+		}
+		code.store(scopes.get(scopes.size() - 1)[stmt.slot]);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		Label start = code.label();
+		Label next = code.label();
+		Label exit = code.label();
+
+		if (stmt == entryLoop) {
+			// The interpreter stops after an iteration's increment, so resume()
+			// enters with the condition still to be tested.
+			code.jump(GOTO, start);
+			code.place(loopEntry);
+			for (int depth = 0; depth < scopes.size(); ++depth) {
+				int[] locals = scopes.get(scopes.size() - 1 - depth);
+				for (int slot = 0; slot < locals.length; ++slot) {
+					code.load(ENVIRONMENT_ARG);
+					code.push(depth);
+					code.push(slot);
+					code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)Ljava/lang/Object;");
+					code.store(locals[slot]);
+				}
+			}
+			loopEntryPlaced = true;
+		}
+
+		code.place(start);
+		condition(stmt.condition, exit);
+		loops.push(new Loop(next, exit));
+		compile(stmt.body);
+		loops.pop();
+
+		code.place(next);
+		if (stmt.increment != null) {
+			compile(stmt.increment);
+			code.op(POP, -1);
+		}
+		code.jump(GOTO, start);
+		code.place(exit);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		if (expr.depth == -1) {
+			compile(expr.value);
+			int value = code.newLocal();
+			code.store(value);
+			code.load(INTERPRETER_ARG);
+			constant(expr.name, TOKEN);
+			code.load(value);
+			code.invoke(INVOKEVIRTUAL, INTERPRETER, "assignGlobal", "(L" + TOKEN + ";Ljava/lang/Object;)V");
+			code.load(value);
+		}
+		else if (expr.depth < scopes.size()) {
+			compile(expr.value);
+			code.op(DUP, 1);
+			code.store(local(expr.depth, expr.slot));
+		}
+		else {
+			compile(expr.value);
+			int value = code.newLocal();
+			code.store(value);
+			code.load(CLOSURE_ARG);
+			code.push(expr.depth - scopes.size());
+			code.push(expr.slot);
+			code.load(value);
+			code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "assignAt", "(IILjava/lang/Object;)V");
+			code.load(value);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		switch (expr.operator.type) {
+			case PLUS: arithmetic(expr, DADD); break;
+			case MINUS: arithmetic(expr, DSUB); break;
+			case STAR: arithmetic(expr, DMUL); break;
+			case SLASH: arithmetic(expr, DDIV); break;
+			case EQUAL_EQUAL:
+			case BANG_EQUAL:
+				compile(expr.left);
+				compile(expr.right);
+				code.invoke(INVOKESTATIC, INTERPRETER, "isEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+				if (expr.operator.type == TokenType.BANG_EQUAL) {
+					code.push(1);
+					code.op(IXOR, -1);
+				}
+				box();
+				break;
+			default:
+				Label isFalse = code.label();
+				Label end = code.label();
+				condition(expr, isFalse);
+				code.field(GETSTATIC, BOOLEAN, "TRUE", "L" + BOOLEAN + ";");
+				code.jump(GOTO, end);
+				code.place(isFalse);
+				code.field(GETSTATIC, BOOLEAN, "FALSE", "L" + BOOLEAN + ";");
+				code.place(end);
+		}
+		return null;
+	}
+
+	private void arithmetic(Expr.Binary expr, int opcode) {
+		int left = operand(expr.left);
+		int right = operand(expr.right);
+		Label slow = code.label();
+		Label end = code.label();
+
+		guardDouble(left, slow);
+		guardDouble(right, slow);
+		unboxDouble(left);
+		unboxDouble(right);
+		code.op(opcode, -2);
+		code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)Ljava/lang/Double;");
+		code.jump(GOTO, end);
+
+		code.place(slow);
+		binaryFallback(expr.operator, left, right);
+		code.place(end);
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		code.load(INTERPRETER_ARG);
+		constant(expr, "com/luca/Expr$Call");
+		compile(expr.callee);
+
+		int count = expr.arguments.size();
+		if (count <= MAX_FIXED_ARITY && !expr.tail) {
+			for (Expr argument : expr.arguments) {
+				compile(argument);
+			}
+			code.invoke(INVOKEVIRTUAL, INTERPRETER, "call" + count, "(Lcom/luca/Expr$Call;L" + OBJECT + ";" + ("L" + OBJECT + ";").repeat(count) + ")L" + OBJECT + ";");
+			return null;
+		}
+
+		code.push(count);
+		code.type(ANEWARRAY, OBJECT);
+		for (int i = 0; i < count; ++i) {
+			code.op(DUP, 1);
+			code.push(i);
+			compile(expr.arguments.get(i));
+			code.op(AASTORE, -3);
+		}
+		code.invoke(INVOKEVIRTUAL, INTERPRETER, expr.tail ? "tailCall" : "callN", "(Lcom/luca/Expr$Call;L" + OBJECT + ";[L" + OBJECT + ";)L" + OBJECT + ";");
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		code.load(INTERPRETER_ARG);
+		constant(expr, "com/luca/Expr$Get");
+		compile(expr.object);
+		code.invoke(INVOKEVIRTUAL, INTERPRETER, "getProperty", "(Lcom/luca/Expr$Get;Ljava/lang/Object;)Ljava/lang/Object;");
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			code.op(ACONST_NULL, 1);
+		}
+		else if (expr.value instanceof Boolean) {
+			code.field(GETSTATIC, BOOLEAN, (boolean) expr.value ? "TRUE" : "FALSE", "L" + BOOLEAN + ";");
+		}
+		else {
+			constant(expr.value, OBJECT);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		Label end = code.label();
+		compile(expr.left);
+		code.op(DUP, 1);
+		code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z");
+		code.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+		code.op(POP, -1);
+		compile(expr.right);
+		code.place(end);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		code.load(INTERPRETER_ARG);
+		constant(expr, "com/luca/Expr$Set");
+		code.load(INTERPRETER_ARG);
+		constant(expr, "com/luca/Expr$Set");
+		compile(expr.object);
+		code.invoke(INVOKEVIRTUAL, INTERPRETER, "fieldTarget", "(Lcom/luca/Expr$Set;Ljava/lang/Object;)Lcom/luca/LucaInstance;");
+		compile(expr.value);
+		code.invoke(INVOKEVIRTUAL, INTERPRETER, "setProperty", "(Lcom/luca/Expr$Set;Lcom/luca/LucaInstance;Ljava/lang/Object;)Ljava/lang/Object;");
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		if (expr.operator.type == TokenType.BANG) {
+			compile(expr.right);
+			code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z");
+			code.push(1);
+			code.op(IXOR, -1);
+			box();
+			return null;
+		}
+
+		int operand = operand(expr.right);
+		Label slow = code.label();
+		Label end = code.label();
+
+		guardDouble(operand, slow);
+		unboxDouble(operand);
+		code.op(DNEG, 0);
+		code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)Ljava/lang/Double;");
+		code.jump(GOTO, end);
+
+		code.place(slow);
+		loadOwner();
+		constant(expr.operator, TOKEN);
+		code.load(operand);
+		code.invoke(INVOKESTATIC, JIT, "unaryFallback", "(L" + FUNCTION + ";L" + TOKEN + ";Ljava/lang/Object;)Ljava/lang/Object;");
+		code.place(end);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		if (expr.depth == -1) {
+			code.load(INTERPRETER_ARG);
+			constant(expr.name, TOKEN);
+			code.invoke(INVOKEVIRTUAL, INTERPRETER, "lookupGlobal", "(L" + TOKEN + ";)Ljava/lang/Object;");
+		}
+		else if (expr.depth < scopes.size()) {
+			code.load(local(expr.depth, expr.slot));
+		}
+		else {
+			code.load(CLOSURE_ARG);
+			code.push(expr.depth - scopes.size());
+			code.push(expr.slot);
+			code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)Ljava/lang/Object;");
+		}
+		return null;
+	}
+
+	// Jumps to ifFalse unless the condition is truthy. Comparisons branch on the
+	// unboxed doubles directly instead of materializing a Boolean.
+	private void condition(Expr expr, Label ifFalse) {
+		if (expr instanceof Expr.Grouping) {
+			condition(((Expr.Grouping) expr).expression, ifFalse);
+			return;
+		}
+
+		if (expr instanceof Expr.Logical) {
+			Expr.Logical logical = (Expr.Logical) expr;
+			if (logical.operator.type == TokenType.AND) {
+				condition(logical.left, ifFalse);
+				condition(logical.right, ifFalse);
+			}
+			else {
+				Label tryRight = code.label();
+				Label end = code.label();
+				condition(logical.left, tryRight);
+				code.jump(GOTO, end);
+				code.place(tryRight);
+				condition(logical.right, ifFalse);
+				code.place(end);
+			}
+			return;
+		}
+
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			switch (binary.operator.type) {
+				case LESS: comparison(binary, DCMPG, IFGE, ifFalse); return;
+				case LESS_EQUAL: comparison(binary, DCMPG, IFGT, ifFalse); return;
+				case GREATER: comparison(binary, DCMPL, IFLE, ifFalse); return;
+				case GREATER_EQUAL: comparison(binary, DCMPL, IFLT, ifFalse); return;
+			}
+		}
+
+		compile(expr);
+		code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z");
+		code.jump(IFEQ, ifFalse);
+	}
+
+	// NaN compares false either way: dcmpg makes it fail < and <=, dcmpl > and >=.
+	private void comparison(Expr.Binary expr, int compare, int branchIfFalse, Label ifFalse) {
+		int left = operand(expr.left);
+		int right = operand(expr.right);
+		Label slow = code.label();
+		Label end = code.label();
+
+		guardDouble(left, slow);
+		guardDouble(right, slow);
+		unboxDouble(left);
+		unboxDouble(right);
+		code.op(compare, -3);
+		code.jump(branchIfFalse, ifFalse);
+		code.jump(GOTO, end);
+
+		code.place(slow);
+		binaryFallback(expr.operator, left, right);
+		code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z");
+		code.jump(IFEQ, ifFalse);
+		code.place(end);
+	}
+
+	// Evaluates an operand into a JVM local so guards can inspect it without
+	// re-evaluating; local variables are used in place.
+	private int operand(Expr expr) {
+		if (expr instanceof Expr.Variable) {
+			Expr.Variable variable = (Expr.Variable) expr;
+			if (variable.depth != -1 && variable.depth < scopes.size()) {
+				return local(variable.depth, variable.slot);
+			}
+		}
+
+		compile(expr);
+		int temp = code.newLocal();
+		code.store(temp);
+		return temp;
+	}
+
+	private void guardDouble(int local, Label otherwise) {
+		code.load(local);
+		code.type(INSTANCEOF, DOUBLE);
+		code.jump(IFEQ, otherwise);
+	}
+
+	private void unboxDouble(int local) {
+		code.load(local);
+		code.type(CHECKCAST, DOUBLE);
+		code.invoke(INVOKEVIRTUAL, DOUBLE, "doubleValue", "()D");
+	}
+
+	private void binaryFallback(Token operator, int left, int right) {
+		loadOwner();
+		constant(operator, TOKEN);
+		code.load(left);
+		code.load(right);
+		code.invoke(INVOKESTATIC, JIT, "binaryFallback",
+						"(L" + FUNCTION + ";L" + TOKEN + ";Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+	}
+
+	private void box() {
+		code.invoke(INVOKESTATIC, BOOLEAN, "valueOf", "(Z)Ljava/lang/Boolean;");
+	}
+
+	private void loadOwner() {
+		code.load(THIS);
+		code.field(GETFIELD, className, "owner", "L" + FUNCTION + ";");
+	}
+
+	private void constant(Object value, String type) {
+		Integer index = constantIndex.get(value);
+		if (index == null) {
+			index = constants.size();
+			constants.add(value);
+			constantIndex.put(value, index);
+		}
+
+		code.load(THIS);
+		code.field(GETFIELD, className, "constants", "[Ljava/lang/Object;");
+		code.push(index);
+		code.op(AALOAD, -1);
+		if (!type.equals(OBJECT)) {
+			code.type(CHECKCAST, type);
+		}
+	}
+
+	// Scope locals start out nil, as a fresh Environment would.
+	private int[] beginScope(int slotCount) {
+		int[] locals = new int[slotCount];
+		for (int i = 0; i < slotCount; ++i) {
+			locals[i] = code.newLocal();
+			code.op(ACONST_NULL, 1);
+			code.store(locals[i]);
+		}
+		scopes.add(locals);
+		return locals;
+	}
+
+	private int local(int depth, int slot) {
+		return scopes.get(scopes.size() - 1 - depth)[slot];
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+}
@@ -0,0 +1,46 @@
+package com.luca;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A function body the parser only skipped: where it starts in the
+// script's tokens. The first call parses, resolves and optimizes it. Lazy
+// bodies only come from top-level functions and methods, whose enclosing
+// scope is the global one, so they resolve the same on their own as they
+// would have in place.
+//
+// A Program's functions are shared by every Context running it, so the first
+// call on any thread compiles the body. All lazy bodies of a script seek the
+// same TokenBuffer, so they compile one at a time under its lock.
+class LazyBody {
+	private final TokenBuffer tokens;
+	private final int start;
+	private final AtomicInteger sites;
+
+	LazyBody(TokenBuffer tokens, int start, AtomicInteger sites) {
+		this.tokens = tokens;
+		this.start = start;
+		this.sites = sites;
+	}
+
+	void compile(Stmt.Function function) {
+		synchronized (tokens) {
+			if (function.lazyBody == null) { return; }
+
+			ErrorReporter reporter = new ErrorReporter();
+			tokens.seek(start);
+			List<Stmt> body = new Parser(tokens, reporter).functionBody();
+			if (!reporter.hadError()) { new Resolver(reporter, sites).resolveBody(function, body); }
+
+			// Errors in a lazy body, other than the braces and loop exits the
+			// skipping parse checked, only surface once it's called. The body
+			// stays lazy then, so every call reports them again.
+			if (reporter.hadError()) {
+				throw new RuntimeError(function.name, String.join("\n", reporter.errors)
+								+ "\nFunction '" + function.name.lexeme() + "' doesn't compile.");
+			}
+			function.body = new Optimizer().optimize(body);
+			function.lazyBody = null;
+		}
+	}
+}
@@ -3,89 +3,176 @@ package com.luca;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Objects;
 
-import static com.luca.TokenType.EOF;
-
+// The command line. Each Luca holds one invocation's flags and streams, so
+// the Daemon can run several side by side; embedders use Program and
+// Context directly.
 public class Luca {
-  static boolean hadError = false;
-  static boolean hadRuntimeError = false;
-  private static final Interpreter interpreter = new Interpreter();
+  public enum Backend { INTERPRETER, VM, NODES, CLOSURES }
+
+  private final PrintStream out;
+  private final PrintStream err;
+  private Backend backend = Backend.INTERPRETER;
+  private boolean reportInlineCaches = false;
+  private boolean jit = true;
+  private boolean dumpAst = false;
+  private boolean cacheAst = false;
+  private boolean lazy = false;
+
+  Luca(PrintStream out, PrintStream err) {
+    this.out = out;
+    this.err = err;
+  }
 
   public static void main(String[] args) throws IOException {
-  if (args.length > 1) {
-      System.out.println("Usage: luca [script]");
-      System.exit(64);
+    if (args.length > 0 && args[0].equals("--daemon")) {
+      if (args.length > 2) { System.exit(new Luca(System.out, System.err).usage()); }
+      Daemon.serve(args.length == 2 ? Paths.get(args[1]) : Daemon.socket());
+      return;
+    }
+
+    int status = new Luca(System.out, System.err).launch(args);
+    if (status != 0) { System.exit(status); }
+  }
+
+  // Runs one command line and returns its exit status.
+  int launch(String[] args) throws IOException {
+    int first = 0;
+    while (first < args.length && args[first].startsWith("--")) {
+      switch (args[first]) {
+        case "--vm": backend = Backend.VM; break;
+        case "--nodes": backend = Backend.NODES; break;
+        case "--closures": backend = Backend.CLOSURES; break;
+        case "--ic-stats": reportInlineCaches = true; break;
+        case "--no-jit": jit = false; break;
+        case "--dump-ast": dumpAst = true; break;
+        case "--cache": cacheAst = true; break;
+        case "--lazy": lazy = true; break;
+        default: return usage();
+      }
+      ++first;
+    }
+
+    if (args.length - first > 1) {
+      return usage();
     }
-    else if (args.length == 1) {
-      runFile(args[0]);
+    else if (args.length - first == 1) {
+      return runFile(args[first]);
     }
     else {
       runPrompt();
+      return 0;
     }
   }
 
-  private static void run(String source) {
-    Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
-    Parser parser = new Parser(tokens);
-    List<Stmt> statements = parser.parse();
+  private int usage() {
+    out.println("Usage: luca [--vm | --nodes | --closures] [--no-jit] [--ic-stats] [--dump-ast] [--cache] [--lazy] [script]");
+    out.println("       luca --daemon [socket]");
+    out.println();
+    out.println("  --no-jit  Don't compile hot functions to JVM bytecode. A function tiers up");
+    out.println("            after " + JitCompiler.INVOCATION_THRESHOLD + " calls, or inside a call once its loops have run "
+        + JitCompiler.BACK_EDGE_THRESHOLD + " times.");
+    out.println("            Top-level loops, and functions that declare functions or classes,");
+    out.println("            always stay interpreted.");
+    out.println("  --lazy    Parse a top-level function or method body at its first call. Only");
+    out.println("            unbalanced braces and a 'break' or 'continue' outside of a loop");
+    out.println("            are compile errors then (exit 65); any other error in a body is a");
+    out.println("            runtime error at each call (exit 70), and never reported if the");
+    out.println("            body is never called. Tree-walker only, and not with --cache.");
+    return 64;
+  }
+
+  // Compile errors are echoed to err as they're found; null if there were any.
+  private Program compile(CharSequence source) {
+    Program program = Program.compile(source, backend, parsesLazily(), new ErrorReporter(err));
+    if (program != null && dumpAst) { err.print(new AstPrinter().print(program.statements)); }
+    return program;
+  }
+
+  // Only the tree-walker can parse a body on first call, and a cached AST
+  // has to be complete.
+  private boolean parsesLazily() {
+    return lazy && backend == Backend.INTERPRETER && !cacheAst;
+  }
+
+  // Lazy bodies are scanned at their first call, long after the eager parse,
+  // so they get a heap copy of the script rather than its mapping: a file
+  // truncated meanwhile would fault the mapping, and one rewritten in place
+  // would hand them different bytes.
+  private static CharSequence load(Path script, boolean copy) throws IOException {
+    return copy ? MappedSource.of(ByteBuffer.wrap(Files.readAllBytes(script))) : MappedSource.load(script);
+  }
 
-    if (hadError) { return; }
+  // Returns false after reporting a runtime error.
+  private boolean execute(Program program, Context context) {
+    try {
+      context.run(program);
+      return true;
+    } catch (LucaException error) {
+      err.println(error.getMessage());
+      return false;
+    } finally {
+      if (reportInlineCaches && backend == Backend.INTERPRETER) { reportInlineCaches(context.interpreter()); }
+    }
+  }
 
-    Resolver resolver = new Resolver(interpreter);
-    resolver.resolve(statements);
+  private void reportInlineCaches(Interpreter interpreter) {
+    long hits = 0;
+    long misses = 0;
+    List<InlineCache> caches = interpreter.inlineCaches();
+    for (InlineCache cache : caches) {
+      hits += cache.hits;
+      misses += cache.misses;
+      err.println(cache);
+    }
+    err.println(caches.size() + " inline cache sites, " + hits + " hits, " + misses + " misses");
+  }
 
-    if (hadError) { return; }
+  private int runFile(String path) throws IOException {
+    Path script = Paths.get(path);
+    Program program = cacheAst ? compileCached(script) : compile(load(script, parsesLazily()));
+    if (program == null) { return 65; }
 
-    interpreter.interpret(statements);
+    return execute(program, new Context(backend, out, jit, new ErrorReporter(err))) ? 0 : 70;
   }
 
-  private static void runFile(String path) throws IOException {
-    byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+  private Program compileCached(Path script) throws IOException {
+    // One heap copy is both hashed and compiled; hashing and compiling the
+    // file separately would let an edit in between store the new AST under
+    // the old hash.
+    ByteBuffer source = ByteBuffer.wrap(Files.readAllBytes(script));
+    AstCache cache = AstCache.forSource(source);
+    List<Stmt> statements = cache.load();
+    if (statements == null) {
+      Program program = compile(MappedSource.of(source));
+      if (program != null) { cache.store(program.statements); }
+      return program;
+    }
 
-    if (hadError) { System.exit(65); }
-    if (hadRuntimeError) { System.exit(70); }
+    if (dumpAst) { err.print(new AstPrinter().print(statements)); }
+    return Program.of(statements, backend, new ErrorReporter(err));
   }
 
-  private static void runPrompt() throws IOException {
+  private void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
 
+    // every line runs on the same Context, so earlier definitions stay visible
+    Context context = new Context(backend, out, jit, new ErrorReporter(err));
     while (true) {
-      System.out.print("> ");
+      out.print("> ");
       String line = reader.readLine();
       if (Objects.isNull(line)) { break; }
-      run(line);
-      hadError = false;
-    }
-  }
 
-  static void error(int line, String message) {
-    report(line, "", message);
-  }
-
-  static void error(Token token, String message)  {
-    if (token.type == EOF) {
-      report(token.line, " at end", message);
-    }
-    else {
-      report(token.line, " at '" + token.lexeme + "'", message);
+      Program program = compile(line);
+      if (program != null) { execute(program, context); }
     }
   }
-
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-    hadRuntimeError = true;
-  }
-
-  private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
-  }
 }
@@ -1,8 +1,36 @@
 package com.luca;
 
+import java.util.Arrays;
 import java.util.List;
 
 interface LucaCallable {
 	int arity();
 	Object call(Interpreter interpreter, List<Object> arguments);
+
+	// Fixed-arity entry points, used by call sites so a call doesn't have to
+	// build an argument List. Callers have already checked the arity.
+	// Callables that can put arguments straight into their frame override
+	// these; the rest get them as a List. The node and closure backends have
+	// no Interpreter and pass null: the only natives they define, clock and
+	// clockNanos, don't use it.
+	default Object call0(Interpreter interpreter) {
+		return call(interpreter, List.of());
+	}
+
+	default Object call1(Interpreter interpreter, Object a) {
+		return call(interpreter, Arrays.asList(a));
+	}
+
+	default Object call2(Interpreter interpreter, Object a, Object b) {
+		return call(interpreter, Arrays.asList(a, b));
+	}
+
+	default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		return call(interpreter, Arrays.asList(a, b, c));
+	}
+
+	// Any arity. The callee may keep the array.
+	default Object callN(Interpreter interpreter, Object[] arguments) {
+		return call(interpreter, Arrays.asList(arguments));
+	}
 }
@@ -8,7 +8,10 @@ import java.util.Map;
 @RequiredArgsConstructor
 class LucaClass implements LucaCallable {
 	final String name;
-	private final Map<String, LucaFunction> methods;
+	private final Map<String, LucaCallable> methods;
+	final Shape rootShape = new Shape();
+	// largest field count seen so far, used to presize new instances
+	int instanceSize = 0;
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
@@ -21,7 +24,11 @@ class LucaClass implements LucaCallable {
 		return 0;
 	}
 
-	LucaFunction findMethod(String name) {
+	void defineMethod(String name, LucaCallable method) {
+		methods.put(name, method);
+	}
+
+	LucaCallable findMethod(String name) {
 		if (methods.containsKey(name)) {
 			return methods.get(name);
 		}
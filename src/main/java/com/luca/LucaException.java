@@ -0,0 +1,22 @@
+package com.luca;
+
+// A script that didn't compile or stopped on a runtime error. The message is
+// what the command line prints for it: the compile errors one per line, or
+// the runtime error followed by the line it happened on.
+public class LucaException extends Exception {
+	private final int line;
+
+	LucaException(String message, int line) {
+		super(message);
+		this.line = line;
+	}
+
+	static LucaException of(RuntimeError error) {
+		return new LucaException(error.getMessage() + "\n[line " + error.line + "]", error.line);
+	}
+
+	// line of the runtime error, or of the first compile error
+	public int getLine() {
+		return line;
+	}
+}
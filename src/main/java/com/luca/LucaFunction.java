@@ -8,21 +8,195 @@ import java.util.List;
 class LucaFunction implements LucaCallable {
 	private final Stmt.Function declaration;
 	private final Environment closure;
+	// inline caches of the Program that declared it, on the interpreter that did
+	private final Interpreter.Sites sites;
+
+	// tiering state: counted while interpreted, see JitCompiler
+	int invocations = 0;
+	int backEdges = 0;
+	private int speculationFailures = 0;
+	private boolean compilable = true;
+	private JitCode compiled = null;
+	// entry into the compiled body at a hot loop, for calls already running
+	private LoopEntry loopEntry = null;
+
+	private static final class LoopEntry {
+		final Stmt.While loop;
+		final OsrCode code;
+
+		LoopEntry(Stmt.While loop, OsrCode code) {
+			this.loop = loop;
+			this.code = code;
+		}
+	}
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
-		Environment environment = new Environment(this.closure);
-		for (int i = 0; i < declaration.params.size(); ++i) {
-			environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+		return callN(interpreter, arguments.toArray());
+	}
+
+	// The fixed-arity entries write their arguments straight into the new
+	// frame's slots, or pass them as-is to compiled code. Each one runs with
+	// the inline caches of the Program the function was declared in.
+	@Override
+	public Object call0(Interpreter interpreter) {
+		JitCode code = prepare(interpreter);
+		Interpreter.Sites caller = interpreter.enter(sites);
+		try {
+			if (code != null) { return trampoline(interpreter, code.call0(interpreter, closure)); }
+
+			return trampoline(interpreter, interpret(interpreter, frame()));
+		} finally {
+			interpreter.sites = caller;
+		}
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object a) {
+		JitCode code = prepare(interpreter);
+		Interpreter.Sites caller = interpreter.enter(sites);
+		try {
+			if (code != null) { return trampoline(interpreter, code.call1(interpreter, closure, a)); }
+
+			Environment frame = frame();
+			frame.define(0, a);
+			return trampoline(interpreter, interpret(interpreter, frame));
+		} finally {
+			interpreter.sites = caller;
+		}
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		JitCode code = prepare(interpreter);
+		Interpreter.Sites caller = interpreter.enter(sites);
+		try {
+			if (code != null) { return trampoline(interpreter, code.call2(interpreter, closure, a, b)); }
+
+			Environment frame = frame();
+			frame.define(0, a);
+			frame.define(1, b);
+			return trampoline(interpreter, interpret(interpreter, frame));
+		} finally {
+			interpreter.sites = caller;
 		}
+	}
 
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		JitCode code = prepare(interpreter);
+		Interpreter.Sites caller = interpreter.enter(sites);
 		try {
-			interpreter.executeBlock(declaration.body, environment);
+			if (code != null) { return trampoline(interpreter, code.call3(interpreter, closure, a, b, c)); }
+
+			Environment frame = frame();
+			frame.define(0, a);
+			frame.define(1, b);
+			frame.define(2, c);
+			return trampoline(interpreter, interpret(interpreter, frame));
+		} finally {
+			interpreter.sites = caller;
 		}
-		catch (Return returnValue) {
-			return returnValue.value;
+	}
+
+	@Override
+	public Object callN(Interpreter interpreter, Object[] arguments) {
+		Interpreter.Sites caller = interpreter.sites;
+		try {
+			return trampoline(interpreter, invoke(interpreter, arguments));
+		} finally {
+			interpreter.sites = caller;
+		}
+	}
+
+	// Trampoline for tail calls: a body that ends in `return f(...)` hands back
+	// a TailCall instead of calling f, and f runs here in the same Java frame.
+	private static Object trampoline(Interpreter interpreter, Object result) {
+		while (result instanceof TailCall) {
+			TailCall next = (TailCall) result;
+			result = next.function.invoke(interpreter, next.arguments);
+		}
+		return result;
+	}
+
+	// Leaves its Program's caches current; the entry that called it restores
+	// the caller's.
+	private Object invoke(Interpreter interpreter, Object[] arguments) {
+		JitCode code = prepare(interpreter);
+		interpreter.enter(sites);
+		if (code != null) { return code.callN(interpreter, closure, arguments); }
+
+		Environment frame = frame();
+		for (int i = 0; i < arguments.length; ++i) {
+			frame.define(i, arguments[i]);
+		}
+		return interpret(interpreter, frame);
+	}
+
+	// Parses a lazy body and tiers up when the function is hot; returns the
+	// compiled code, or null to interpret.
+	private JitCode prepare(Interpreter interpreter) {
+		if (declaration.lazyBody != null) {
+			declaration.lazyBody.compile(declaration);
+		}
+		// read once: a task on another thread may drop the compiled code meanwhile
+		JitCode code = compiled;
+		if (code == null && compilable && interpreter.jit && isHot()) {
+			code = JitCompiler.compile(declaration, this);
+			compiled = code;
+			compilable = code != null;
+		}
+		return code;
+	}
+
+	// On-stack replacement: a call still interpreting a hot loop moves into
+	// compiled code at the loop's next condition check, rather than leaving
+	// the compiled body to the next call. Returns how the call finished, or
+	// null to go on interpreting.
+	Completion enterLoop(Interpreter interpreter, Stmt.While loop, Environment environment) {
+		if (!compilable || !interpreter.jit) { return null; }
+
+		// read once, like compiled
+		LoopEntry entry = loopEntry;
+		if (entry == null || entry.loop != loop) {
+			OsrCode code = JitCompiler.compileLoop(declaration, this, loop);
+			if (code == null) {
+				compilable = false;
+				return null;
+			}
+			entry = new LoopEntry(loop, code);
+			loopEntry = entry;
+		}
+		return Completion.returning(entry.code.resume(interpreter, closure, environment));
+	}
+
+	// only after prepare(), which fills in a lazy body's slot count
+	private Environment frame() {
+		return new Environment(closure, declaration.slotCount);
+	}
+
+	private Object interpret(Interpreter interpreter, Environment frame) {
+		LucaFunction caller = interpreter.activeFunction;
+		interpreter.activeFunction = this;
+		try {
+			return interpreter.executeBlock(declaration.body, frame).value;
+		} finally {
+			interpreter.activeFunction = caller;
+		}
+	}
+
+	private boolean isHot() {
+		return ++invocations >= JitCompiler.INVOCATION_THRESHOLD || backEdges >= JitCompiler.BACK_EDGE_THRESHOLD;
+	}
+
+	// Compiled code only bails out per operation, so once speculation keeps
+	// failing the function goes back to the tree-walker for good.
+	void speculationFailed() {
+		if (++speculationFailures >= JitCompiler.DEOPT_LIMIT) {
+			compiled = null;
+			loopEntry = null;
+			compilable = false;
 		}
-		return null;
 	}
 
 	@Override
@@ -32,6 +206,6 @@ class LucaFunction implements LucaCallable {
 
 	@Override
 	public String toString() {
-		return "<fn " + declaration.name.lexeme + ">";
+		return "<fn " + declaration.name.lexeme() + ">";
 	}
 }
@@ -1,28 +1,67 @@
 package com.luca;
 
-import lombok.RequiredArgsConstructor;
+import java.util.Arrays;
 
-import java.util.HashMap;
-import java.util.Map;
-
-@RequiredArgsConstructor
+// Shared between tasks on the same terms as Environment slots: spawn and
+// await order what each side sees, and anything else is a race.
 class LucaInstance {
 	private final LucaClass klass;
-	private final Map<String, Object> fields = new HashMap<>();
+	private Shape shape;
+	private Object[] fields;
+
+	LucaInstance(LucaClass klass) {
+		this.klass = klass;
+		this.fields = new Object[klass.instanceSize];
+		this.shape = klass.rootShape;
+	}
 
 	Object get(Token name) {
-		if (fields.containsKey(name.lexeme)) {
-			return fields.get(name.lexeme);
+		int slot = shape().slotOf(name.lexeme());
+		if (slot != -1) {
+			return getField(slot);
 		}
 
-		LucaFunction method = klass.findMethod(name.lexeme);
+		LucaCallable method = klass.findMethod(name.lexeme());
 		if (method != null) { return method; }
 
-		throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+		throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'.");
 	}
 
 	void set(Token name, Object value) {
-		fields.put(name.lexeme, value);
+		Shape shape = shape();
+		int slot = shape.slotOf(name.lexeme());
+		if (slot != -1) {
+			setField(slot, value);
+		}
+		else {
+			addField(shape.withField(name.lexeme()), shape.size(), value);
+		}
+	}
+
+	Shape shape() {
+		return shape;
+	}
+
+	LucaClass klass() {
+		return klass;
+	}
+
+	Object getField(int slot) {
+		return fields[slot];
+	}
+
+	void setField(int slot, Object value) {
+		fields[slot] = value;
+	}
+
+	// moves to the successor shape that adds the field at slot
+	void addField(Shape next, int slot, Object value) {
+		if (slot == fields.length) {
+			fields = Arrays.copyOf(fields, slot + 1);
+			klass.instanceSize = Math.max(klass.instanceSize, fields.length);
+		}
+		fields[slot] = value;
+		shape = next;
 	}
 
 	@Override
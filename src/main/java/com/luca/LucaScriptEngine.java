@@ -0,0 +1,260 @@
+package com.luca;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// javax.script binding for the tree-walker. The ENGINE_SCOPE bindings are the
+// script's globals, so values put into them are visible to scripts, and
+// functions a script declares can be invoked by name afterwards. Luca numbers
+// are doubles: other Numbers passed to invoked functions are converted, but
+// values put into the bindings are not.
+//
+// Scripts compile through the factory's ProgramCache, so evaluating the same
+// source again doesn't rescan it. Like a Context, an engine must only be used
+// by one thread at a time. Tasks a script spawns share its globals from other
+// threads, which bindings from createBindings() allow for; other Bindings
+// have to be thread-safe themselves.
+public class LucaScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+	private final LucaScriptEngineFactory factory;
+	private final ProgramCache programs;
+	// Context for the bindings and writer evals last ran with, kept while they
+	// stay the same so globals, inline caches and JIT state carry over
+	private Context context = null;
+	private Bindings contextBindings = null;
+	private Writer contextWriter = null;
+	private Writer contextErrorWriter = null;
+
+	LucaScriptEngine(LucaScriptEngineFactory factory, ProgramCache programs) {
+		this.factory = factory;
+		this.programs = programs;
+		setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+	}
+
+	@Override
+	public Object eval(String script, ScriptContext scriptContext) throws ScriptException {
+		return run(compileProgram(script, scriptContext), scriptContext);
+	}
+
+	@Override
+	public Object eval(Reader reader, ScriptContext scriptContext) throws ScriptException {
+		return eval(read(reader), scriptContext);
+	}
+
+	@Override
+	public CompiledScript compile(String script) throws ScriptException {
+		return new Compiled(compileProgram(script, getContext()));
+	}
+
+	@Override
+	public CompiledScript compile(Reader script) throws ScriptException {
+		return compile(read(script));
+	}
+
+	@Override
+	public Bindings createBindings() {
+		return new SimpleBindings(new Globals());
+	}
+
+	@Override
+	public ScriptEngineFactory getFactory() {
+		return factory;
+	}
+
+	@Override
+	public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+		Object function = getBindings(ScriptContext.ENGINE_SCOPE).get(name);
+		if (!(function instanceof LucaCallable)) {
+			throw new NoSuchMethodException("No function '" + name + "'.");
+		}
+		return call((LucaCallable) function, args);
+	}
+
+	@Override
+	public Object invokeMethod(Object thiz, String name, Object... args) throws ScriptException, NoSuchMethodException {
+		if (!(thiz instanceof LucaInstance)) {
+			throw new IllegalArgumentException("Not a Luca instance: " + thiz);
+		}
+
+		Object method = property((LucaInstance) thiz, name);
+		if (!(method instanceof LucaCallable)) {
+			throw new NoSuchMethodException("No method '" + name + "' on " + thiz + ".");
+		}
+		return call((LucaCallable) method, args);
+	}
+
+	@Override
+	public <T> T getInterface(Class<T> type) {
+		Bindings globals = getBindings(ScriptContext.ENGINE_SCOPE);
+		for (Method method : type.getMethods()) {
+			if (!(globals.get(method.getName()) instanceof LucaCallable)) { return null; }
+		}
+		return proxy(type, (method, args) -> invokeFunction(method.getName(), args));
+	}
+
+	@Override
+	public <T> T getInterface(Object thiz, Class<T> type) {
+		if (!(thiz instanceof LucaInstance)) {
+			throw new IllegalArgumentException("Not a Luca instance: " + thiz);
+		}
+
+		for (Method method : type.getMethods()) {
+			if (!(property((LucaInstance) thiz, method.getName()) instanceof LucaCallable)) { return null; }
+		}
+		return proxy(type, (method, args) -> invokeMethod(thiz, method.getName(), args));
+	}
+
+	private interface Dispatch {
+		Object invoke(Method method, Object[] args) throws ScriptException, NoSuchMethodException;
+	}
+
+	private static <T> T proxy(Class<T> type, Dispatch dispatch) {
+		Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (self, method, args) -> {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+					case "equals": return self == args[0];
+					case "hashCode": return System.identityHashCode(self);
+					default: return "Luca " + type.getSimpleName();
+				}
+			}
+			return dispatch.invoke(method, args == null ? new Object[0] : args);
+		});
+		return type.cast(proxy);
+	}
+
+	private class Compiled extends CompiledScript {
+		private final Program program;
+
+		Compiled(Program program) {
+			this.program = program;
+		}
+
+		@Override
+		public Object eval(ScriptContext scriptContext) throws ScriptException {
+			return run(program, scriptContext);
+		}
+
+		@Override
+		public ScriptEngine getEngine() {
+			return LucaScriptEngine.this;
+		}
+	}
+
+	private Program compileProgram(String script, ScriptContext scriptContext) throws ScriptException {
+		try {
+			return programs.get(script);
+		} catch (LucaException error) {
+			throw scriptException(error, scriptContext);
+		}
+	}
+
+	// Luca statements don't produce a value, so evaluating a script returns null.
+	private Object run(Program program, ScriptContext scriptContext) throws ScriptException {
+		try {
+			contextFor(scriptContext).run(program);
+			return null;
+		} catch (LucaException error) {
+			throw scriptException(error, scriptContext);
+		}
+	}
+
+	private Object call(LucaCallable callable, Object[] args) throws ScriptException {
+		List<Object> arguments = new ArrayList<>(args.length);
+		for (Object arg : args) {
+			arguments.add(arg instanceof Number && !(arg instanceof Double) ? ((Number) arg).doubleValue() : arg);
+		}
+
+		try {
+			return contextFor(getContext()).call(callable, arguments);
+		} catch (LucaException error) {
+			throw scriptException(error, getContext());
+		}
+	}
+
+	private Context contextFor(ScriptContext scriptContext) {
+		Bindings bindings = scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
+		Writer writer = scriptContext.getWriter();
+		Writer errorWriter = scriptContext.getErrorWriter();
+		if (context == null || bindings != contextBindings || writer != contextWriter || errorWriter != contextErrorWriter) {
+			PrintStream out = new PrintStream(new WriterStream(writer), true, StandardCharsets.UTF_8);
+			PrintStream err = new PrintStream(new WriterStream(errorWriter), true, StandardCharsets.UTF_8);
+			context = new Context(bindings, out, new ErrorReporter(err));
+			contextBindings = bindings;
+			contextWriter = writer;
+			contextErrorWriter = errorWriter;
+		}
+		return context;
+	}
+
+	private static Object property(LucaInstance instance, String name) {
+		int slot = instance.shape().slotOf(name);
+		return slot != -1 ? instance.getField(slot) : instance.klass().findMethod(name);
+	}
+
+	private static ScriptException scriptException(LucaException error, ScriptContext scriptContext) {
+		Object file = scriptContext.getAttribute(ScriptEngine.FILENAME);
+		ScriptException exception = new ScriptException(error.getMessage(), file == null ? null : file.toString(), error.getLine());
+		exception.initCause(error);
+		return exception;
+	}
+
+	private static String read(Reader reader) throws ScriptException {
+		StringBuilder source = new StringBuilder();
+		char[] buffer = new char[8192];
+		try {
+			for (int count; (count = reader.read(buffer)) != -1; ) {
+				source.append(buffer, 0, count);
+			}
+		} catch (IOException e) {
+			throw new ScriptException(e);
+		}
+		return source.toString();
+	}
+
+	// Lets `print`, which writes to a PrintStream, go to the ScriptContext's
+	// Writer. The PrintStream flushes after every line, so flush() only ever
+	// sees whole characters.
+	private static class WriterStream extends OutputStream {
+		private final Writer writer;
+		private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+		WriterStream(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void write(int b) {
+			pending.write(b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			pending.write(bytes, offset, length);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writer.write(pending.toString(StandardCharsets.UTF_8));
+			writer.flush();
+			pending.reset();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.luca;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+
+// Registered in META-INF/services, so `new ScriptEngineManager().getEngineByName("luca")`
+// finds it. Engines from one factory share a cache of compiled scripts.
+public class LucaScriptEngineFactory implements ScriptEngineFactory {
+	static final int CACHE_SIZE = 256;
+	private static final String VERSION = "1.0";
+
+	private final ProgramCache programs;
+
+	public LucaScriptEngineFactory() {
+		this(CACHE_SIZE);
+	}
+
+	LucaScriptEngineFactory(int cacheSize) {
+		programs = new ProgramCache(cacheSize);
+	}
+
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new LucaScriptEngine(this, programs);
+	}
+
+	@Override
+	public String getEngineName() {
+		return "Luca";
+	}
+
+	@Override
+	public String getEngineVersion() {
+		return VERSION;
+	}
+
+	@Override
+	public List<String> getExtensions() {
+		return List.of("luca");
+	}
+
+	@Override
+	public List<String> getMimeTypes() {
+		return List.of("application/x-luca");
+	}
+
+	@Override
+	public List<String> getNames() {
+		return List.of("luca", "Luca");
+	}
+
+	@Override
+	public String getLanguageName() {
+		return "Luca";
+	}
+
+	@Override
+	public String getLanguageVersion() {
+		return VERSION;
+	}
+
+	@Override
+	public Object getParameter(String key) {
+		switch (key) {
+			case ScriptEngine.ENGINE: return getEngineName();
+			case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+			case ScriptEngine.NAME: return getNames().get(0);
+			case ScriptEngine.LANGUAGE: return getLanguageName();
+			case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+			// engines aren't thread-safe; compiled scripts are shared through the cache
+			default: return null;
+		}
+	}
+
+	@Override
+	public String getMethodCallSyntax(String obj, String m, String... args) {
+		return obj + "." + m + "(" + String.join(", ", args) + ")";
+	}
+
+	@Override
+	public String getOutputStatement(String toDisplay) {
+		return "print \"" + toDisplay + "\";";
+	}
+
+	@Override
+	public String getProgram(String... statements) {
+		StringBuilder program = new StringBuilder();
+		for (String statement : statements) {
+			program.append(statement).append(";\n");
+		}
+		return program.toString();
+	}
+}
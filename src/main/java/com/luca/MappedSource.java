@@ -0,0 +1,73 @@
+package com.luca;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A script file read through a memory mapping rather than copied onto the
+// heap. Pure ASCII files, which is nearly all of them, are scanned straight
+// from the mapped bytes; anything else is decoded once, as before.
+class MappedSource implements CharSequence {
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private final ByteBuffer bytes;
+
+	private MappedSource(ByteBuffer bytes) {
+		this.bytes = bytes;
+	}
+
+	static CharSequence load(Path path) throws IOException {
+		ByteBuffer bytes;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return of(bytes);
+	}
+
+	// Source bytes already in hand, such as a heap copy that has to stay the
+	// same while it's hashed and compiled.
+	static CharSequence of(ByteBuffer bytes) {
+		if (isAscii(bytes)) {
+			return new MappedSource(bytes);
+		}
+		return Charset.defaultCharset().decode(bytes);
+	}
+
+	private static boolean isAscii(ByteBuffer bytes) {
+		int limit = bytes.limit();
+		int i = 0;
+		for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+			if ((bytes.getLong(i) & HIGH_BITS) != 0) { return false; }
+		}
+		for (; i < limit; ++i) {
+			if (bytes.get(i) < 0) { return false; }
+		}
+		return true;
+	}
+
+	@Override
+	public int length() {
+		return bytes.limit();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char) bytes.get(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		byte[] text = new byte[end - start];
+		bytes.get(start, text);
+		return new String(text, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public String toString() {
+		return subSequence(0, length()).toString();
+	}
+}
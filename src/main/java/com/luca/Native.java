@@ -0,0 +1,42 @@
+package com.luca;
+
+import java.util.List;
+
+// A built-in function that needs nothing from the interpreter calling it, so
+// the backends that have no Interpreter, like the VM, can call it directly.
+abstract class Native implements LucaCallable {
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+
+	private final int arity;
+
+	Native(int arity) {
+		this.arity = arity;
+	}
+
+	abstract Object call(Object[] arguments);
+
+	@Override
+	public int arity() {
+		return arity;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, List<Object> arguments) {
+		return call(arguments.toArray());
+	}
+
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return call(NO_ARGUMENTS);
+	}
+
+	@Override
+	public Object callN(Interpreter interpreter, Object[] arguments) {
+		return call(arguments);
+	}
+
+	@Override
+	public String toString() {
+		return "<native fn>";
+	}
+}
@@ -0,0 +1,23 @@
+package com.luca;
+
+// Base of the executable tree built by NodeBuilder. Nodes know their parent so
+// that a node can swap itself for a type-specialized variant the first time it
+// runs, and back to a generic variant when one of its guards fails.
+abstract class Node {
+	Node parent;
+
+	<T extends Node> T adopt(T child) {
+		if (child != null) { child.parent = this; }
+		return child;
+	}
+
+	<T extends Node> T replace(T replacement) {
+		parent.replaceChild(this, replacement);
+		replacement.parent = parent;
+		return replacement;
+	}
+
+	void replaceChild(Node oldChild, Node newChild) {
+		throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children.");
+	}
+}
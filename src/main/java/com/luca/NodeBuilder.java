@@ -0,0 +1,183 @@
+package com.luca;
+
+import lombok.RequiredArgsConstructor;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Translates the resolved AST into the self-specializing node tree. Variable
+// addresses and the globals map are linked into the nodes up front.
+@RequiredArgsConstructor
+class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+	private final Map<String, Object> globals;
+	private final PrintStream out;
+	// For each enclosing scope, whether it gets its own Environment at run
+	// time. Blocks without locals reuse their parent's frame, so resolved
+	// depths are rebased to skip them.
+	private final List<Boolean> scopes = new ArrayList<>();
+
+	StmtNode[] build(List<Stmt> statements) {
+		StmtNode[] nodes = new StmtNode[statements.size()];
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i] = build(statements.get(i));
+		}
+		return nodes;
+	}
+
+	@Override
+	public StmtNode visitBlockStmt(Stmt.Block stmt) {
+		scopes.add(stmt.slotCount > 0);
+		StmtNode[] statements = build(stmt.statements);
+		scopes.remove(scopes.size() - 1);
+		return new StmtNode.Block(statements, stmt.slotCount);
+	}
+
+	@Override
+	public StmtNode visitClassStmt(Stmt.Class stmt) {
+		FunctionNode[] methods = new FunctionNode[stmt.methods.size()];
+		for (int i = 0; i < methods.length; ++i) {
+			methods[i] = function(stmt.methods.get(i));
+		}
+		return new StmtNode.Class(stmt.name, stmt.slot, globals, methods);
+	}
+
+	@Override
+	public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+		return new StmtNode.Expression(build(stmt.expression));
+	}
+
+	@Override
+	public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+		return new StmtNode.Function(stmt.name, stmt.slot, globals, function(stmt));
+	}
+
+	private FunctionNode function(Stmt.Function stmt) {
+		scopes.add(true);
+		StmtNode[] body = build(stmt.body);
+		scopes.remove(scopes.size() - 1);
+		return new FunctionNode(stmt.name.lexeme(), stmt.params.size(), stmt.slotCount, StmtNode.sequence(body));
+	}
+
+	@Override
+	public StmtNode visitIfStmt(Stmt.If stmt) {
+		StmtNode elseBranch = stmt.elseBranch == null ? null : build(stmt.elseBranch);
+		return new StmtNode.If(build(stmt.condition), build(stmt.thenBranch), elseBranch);
+	}
+
+	@Override
+	public StmtNode visitPrintStmt(Stmt.Print stmt) {
+		return new StmtNode.Print(out, build(stmt.expression));
+	}
+
+	@Override
+	public StmtNode visitReturnStmt(Stmt.Return stmt) {
+		return new StmtNode.Return(stmt.value == null ? null : build(stmt.value));
+	}
+
+	@Override
+	public StmtNode visitVarStmt(Stmt.Var stmt) {
+		ExprNode initializer = stmt.initializer == null ? null : build(stmt.initializer);
+		return new StmtNode.Var(stmt.name, stmt.slot, globals, initializer);
+	}
+
+	@Override
+	public StmtNode visitWhileStmt(Stmt.While stmt) {
+		ExprNode increment = stmt.increment == null ? null : build(stmt.increment);
+		return new StmtNode.While(build(stmt.condition), build(stmt.body), increment);
+	}
+
+	@Override
+	public StmtNode visitBreakStmt(Stmt.Break stmt) {
+		return new StmtNode.Break();
+	}
+
+	@Override
+	public StmtNode visitContinueStmt(Stmt.Continue stmt) {
+		return new StmtNode.Continue();
+	}
+
+	@Override
+	public ExprNode visitAssignExpr(Expr.Assign expr) {
+		ExprNode value = build(expr.value);
+		if (expr.depth != -1) {
+			return new ExprNode.UninitializedWriteLocal(frameDepth(expr.depth), expr.slot, value);
+		}
+		return new ExprNode.WriteGlobal(expr.name, globals, value);
+	}
+
+	@Override
+	public ExprNode visitBinaryExpr(Expr.Binary expr) {
+		return BinaryNode.create(expr.operator, build(expr.left), build(expr.right));
+	}
+
+	@Override
+	public ExprNode visitCallExpr(Expr.Call expr) {
+		ExprNode[] arguments = new ExprNode[expr.arguments.size()];
+		for (int i = 0; i < arguments.length; ++i) {
+			arguments[i] = build(expr.arguments.get(i));
+		}
+		return ExprNode.Call.create(expr.paren, build(expr.callee), arguments);
+	}
+
+	@Override
+	public ExprNode visitGetExpr(Expr.Get expr) {
+		return new ExprNode.Get(expr.name, build(expr.object));
+	}
+
+	@Override
+	public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+		return build(expr.expression);
+	}
+
+	@Override
+	public ExprNode visitLiteralExpr(Expr.Literal expr) {
+		return new ExprNode.Literal(expr.value);
+	}
+
+	@Override
+	public ExprNode visitLogicalExpr(Expr.Logical expr) {
+		if (expr.operator.type == TokenType.OR) {
+			return new ExprNode.Or(build(expr.left), build(expr.right));
+		}
+		return new ExprNode.And(build(expr.left), build(expr.right));
+	}
+
+	@Override
+	public ExprNode visitSetExpr(Expr.Set expr) {
+		return new ExprNode.Set(expr.name, build(expr.object), build(expr.value));
+	}
+
+	@Override
+	public ExprNode visitUnaryExpr(Expr.Unary expr) {
+		if (expr.operator.type == TokenType.BANG) {
+			return new ExprNode.Not(build(expr.right));
+		}
+		return new ExprNode.UninitializedNegate(expr.operator, build(expr.right));
+	}
+
+	@Override
+	public ExprNode visitVariableExpr(Expr.Variable expr) {
+		if (expr.depth != -1) {
+			return new ExprNode.ReadLocal(frameDepth(expr.depth), expr.slot);
+		}
+		return new ExprNode.ReadGlobal(expr.name, globals);
+	}
+
+	private int frameDepth(int depth) {
+		int frames = depth;
+		for (int i = scopes.size() - depth; i < scopes.size(); ++i) {
+			if (!scopes.get(i)) { --frames; }
+		}
+		return frames;
+	}
+
+	private StmtNode build(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	private ExprNode build(Expr expr) {
+		return expr.accept(this);
+	}
+}
@@ -0,0 +1,73 @@
+package com.luca;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+class NodeFunction implements LucaCallable {
+	private final FunctionNode function;
+	private final Environment closure;
+
+	@Override
+	public Object call(Interpreter interpreter, List<Object> arguments) {
+		return callN(interpreter, arguments.toArray());
+	}
+
+	// Arguments go straight into the new frame's slots.
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return run(frame());
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object a) {
+		Environment frame = frame();
+		frame.define(0, a);
+		return run(frame);
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b) {
+		Environment frame = frame();
+		frame.define(0, a);
+		frame.define(1, b);
+		return run(frame);
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+		Environment frame = frame();
+		frame.define(0, a);
+		frame.define(1, b);
+		frame.define(2, c);
+		return run(frame);
+	}
+
+	@Override
+	public Object callN(Interpreter interpreter, Object[] arguments) {
+		Environment frame = frame();
+		for (int i = 0; i < arguments.length; ++i) {
+			frame.define(i, arguments[i]);
+		}
+		return run(frame);
+	}
+
+	private Environment frame() {
+		return new Environment(closure, function.slotCount);
+	}
+
+	private Object run(Environment frame) {
+		return function.execute(frame).value;
+	}
+
+	@Override
+	public int arity() {
+		return function.arity;
+	}
+
+	@Override
+	public String toString() {
+		return "<fn " + function.name + ">";
+	}
+}
@@ -0,0 +1,23 @@
+package com.luca;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs scripts on the self-specializing node tree instead of visiting the AST.
+class NodeInterpreter {
+	private final Map<String, Object> globals = new HashMap<>();
+	private final PrintStream out;
+
+	NodeInterpreter(PrintStream out) {
+		this.out = out;
+		globals.put("clock", Interpreter.CLOCK);
+		globals.put("clockNanos", Interpreter.CLOCK_NANOS);
+	}
+
+	void interpret(List<Stmt> statements) {
+		StmtNode[] program = new NodeBuilder(globals, out).build(statements);
+		StmtNode.executeAll(program, null);
+	}
+}
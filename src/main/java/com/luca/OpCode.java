@@ -0,0 +1,55 @@
+package com.luca;
+
+// Instruction bytes. Plain constants rather than an enum so the VM can switch
+// on the byte it reads; an enum switch goes through ordinal() and a lookup
+// table on every instruction.
+final class OpCode {
+	// Constants and literals
+	static final int CONSTANT = 0;
+	static final int NIL = 1;
+	static final int TRUE = 2;
+	static final int FALSE = 3;
+	static final int POP = 4;
+
+	// Variables
+	static final int GET_LOCAL = 5;
+	static final int SET_LOCAL = 6;
+	static final int STORE_LOCAL = 7;
+	static final int GET_UPVALUE = 8;
+	static final int SET_UPVALUE = 9;
+	static final int GET_GLOBAL = 10;
+	static final int SET_GLOBAL = 11;
+	static final int DEFINE_GLOBAL = 12;
+	static final int GET_PROPERTY = 13;
+	static final int SET_PROPERTY = 14;
+
+	// Operators
+	static final int EQUAL = 15;
+	static final int NOT_EQUAL = 16;
+	static final int GREATER = 17;
+	static final int GREATER_EQUAL = 18;
+	static final int LESS = 19;
+	static final int LESS_EQUAL = 20;
+	static final int ADD = 21;
+	static final int SUBTRACT = 22;
+	static final int MULTIPLY = 23;
+	static final int DIVIDE = 24;
+	static final int NOT = 25;
+	static final int NEGATE = 26;
+
+	// Statements and control flow
+	static final int PRINT = 27;
+	static final int JUMP = 28;
+	static final int JUMP_IF_FALSE = 29;
+	static final int JUMP_IF_TRUE = 30;
+	static final int POP_JUMP_IF_FALSE = 31;
+	static final int LOOP_IF_TRUE = 32;
+	static final int CALL = 33;
+	static final int CLOSURE = 34;
+	static final int CLOSE_UPVALUE = 35;
+	static final int RETURN = 36;
+	static final int CLASS = 37;
+	static final int METHOD = 38;
+
+	private OpCode() {}
+}
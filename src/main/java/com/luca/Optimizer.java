@@ -0,0 +1,245 @@
+package com.luca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Rewrites the resolved AST: folds operators whose operands are constants,
+// drops if/while branches a constant condition can never take, and removes
+// empty blocks. Anything that would fail at run time (such as adding a number
+// to a string) is left alone so the error still happens, and where it happens.
+//
+// It runs after the Resolver so that a branch it drops was still checked,
+// which means each node it rebuilds takes over the slots, sites and tail flag
+// resolved for the one it replaces. Nothing moves from one block to another,
+// so those stay right.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+	// part of AstCache's key: bump whenever a rewrite is added or changes
+	static final int VERSION = 1;
+
+	List<Stmt> optimize(List<Stmt> statements) {
+		List<Stmt> optimized = new ArrayList<>(statements.size());
+		for (Stmt statement : statements) {
+			Stmt result = optimize(statement);
+			if (result != null) { optimized.add(result); }
+		}
+		return optimized;
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		List<Stmt> statements = optimize(stmt.statements);
+		if (statements.isEmpty()) { return null; }
+
+		Stmt.Block block = new Stmt.Block(statements);
+		block.slotCount = stmt.slotCount;
+		return block;
+	}
+
+	@Override
+	public Stmt visitBreakStmt(Stmt.Break stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Stmt visitClassStmt(Stmt.Class stmt) {
+		List<Stmt.Function> methods = new ArrayList<>(stmt.methods.size());
+		for (Stmt.Function method : stmt.methods) {
+			methods.add(function(method));
+		}
+		Stmt.Class klass = new Stmt.Class(stmt.name, methods);
+		klass.slot = stmt.slot;
+		return klass;
+	}
+
+	@Override
+	public Stmt visitContinueStmt(Stmt.Continue stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		Expr expression = optimize(stmt.expression);
+		return expression instanceof Expr.Literal ? null : new Stmt.Expression(expression);
+	}
+
+	@Override
+	public Stmt visitFunctionStmt(Stmt.Function stmt) {
+		return function(stmt);
+	}
+
+	private Stmt.Function function(Stmt.Function stmt) {
+		// a lazy body is optimized when it's parsed, see LazyBody
+		if (stmt.lazyBody != null) { return stmt; }
+
+		Stmt.Function function = new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+		function.slot = stmt.slot;
+		function.slotCount = stmt.slotCount;
+		return function;
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (condition instanceof Expr.Literal) {
+			Stmt taken = Interpreter.isTruthy(((Expr.Literal) condition).value) ? stmt.thenBranch : stmt.elseBranch;
+			return taken == null ? null : optimize(taken);
+		}
+
+		Stmt thenBranch = branch(stmt.thenBranch);
+		Stmt elseBranch = stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+		if (elseBranch == null && thenBranch instanceof Stmt.Block && ((Stmt.Block) thenBranch).statements.isEmpty()) {
+			return new Stmt.Expression(condition);
+		}
+		return new Stmt.If(condition, thenBranch, elseBranch);
+	}
+
+	@Override
+	public Stmt visitPrintStmt(Stmt.Print stmt) {
+		return new Stmt.Print(optimize(stmt.expression));
+	}
+
+	@Override
+	public Stmt visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value == null) { return stmt; }
+
+		// folding can leave a call as what's returned, as in `false or f()`;
+		// only functions get this far with a return
+		Expr value = optimize(stmt.value);
+		Resolver.markTailCall(value);
+		return new Stmt.Return(stmt.keyword, value);
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		Stmt.Var var = new Stmt.Var(stmt.name, stmt.initializer == null ? null : optimize(stmt.initializer));
+		var.slot = stmt.slot;
+		return var;
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Expr condition = optimize(stmt.condition);
+		if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+			return null;
+		}
+
+		Expr increment = stmt.increment == null ? null : optimize(stmt.increment);
+		return new Stmt.While(condition, branch(stmt.body), increment);
+	}
+
+	// If and while bodies must stay statements, so an emptied body becomes an
+	// empty block rather than disappearing.
+	private Stmt branch(Stmt stmt) {
+		Stmt optimized = optimize(stmt);
+		return optimized == null ? new Stmt.Block(new ArrayList<>()) : optimized;
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		Expr.Assign assign = new Expr.Assign(expr.name, optimize(expr.value));
+		assign.depth = expr.depth;
+		assign.slot = expr.slot;
+		return assign;
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+			Object a = ((Expr.Literal) left).value;
+			Object b = ((Expr.Literal) right).value;
+			if (canFold(expr.operator.type, a, b)) {
+				return new Expr.Literal(Interpreter.applyBinary(expr.operator, a, b));
+			}
+		}
+		return new Expr.Binary(left, expr.operator, right);
+	}
+
+	private static boolean canFold(TokenType operator, Object left, Object right) {
+		switch (operator) {
+			case EQUAL_EQUAL:
+			case BANG_EQUAL:
+				return true;
+			case PLUS:
+				return (left instanceof Double && right instanceof Double)
+								|| (left instanceof String && right instanceof String);
+			default:
+				return left instanceof Double && right instanceof Double;
+		}
+	}
+
+	@Override
+	public Expr visitCallExpr(Expr.Call expr) {
+		List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+		for (Expr argument : expr.arguments) {
+			arguments.add(optimize(argument));
+		}
+		Expr.Call call = new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+		call.site = expr.site;
+		call.tail = expr.tail;
+		return call;
+	}
+
+	@Override
+	public Expr visitGetExpr(Expr.Get expr) {
+		Expr.Get get = new Expr.Get(optimize(expr.object), expr.name);
+		get.site = expr.site;
+		return get;
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		Expr expression = optimize(expr.expression);
+		return expression instanceof Expr.Literal ? expression : new Expr.Grouping(expression);
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		if (left instanceof Expr.Literal) {
+			boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+			boolean shortCircuits = expr.operator.type == TokenType.OR ? truthy : !truthy;
+			return shortCircuits ? left : right;
+		}
+		return new Expr.Logical(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitSetExpr(Expr.Set expr) {
+		Expr.Set set = new Expr.Set(optimize(expr.object), expr.name, optimize(expr.value));
+		set.site = expr.site;
+		return set;
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr right = optimize(expr.right);
+		if (right instanceof Expr.Literal) {
+			Object value = ((Expr.Literal) right).value;
+			if (expr.operator.type == TokenType.BANG || value instanceof Double) {
+				return new Expr.Literal(Interpreter.applyUnary(expr.operator, value));
+			}
+		}
+		return new Expr.Unary(expr.operator, right);
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		return expr;
+	}
+
+	private Stmt optimize(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	private Expr optimize(Expr expr) {
+		return expr.accept(this);
+	}
+}
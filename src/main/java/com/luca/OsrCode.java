@@ -0,0 +1,9 @@
+package com.luca;
+
+// A hot LucaFunction compiled by JitCompiler to be entered at the top of one
+// of its loops, for a call that started out interpreted and is still in that
+// loop. resume() takes over the loop's locals from the interpreter's
+// environment and runs the rest of the function.
+abstract class OsrCode {
+	abstract Object resume(Interpreter interpreter, Environment closure, Environment environment);
+}
@@ -1,20 +1,89 @@
 package com.luca;
 
-import lombok.RequiredArgsConstructor;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.luca.TokenType.*;
 
-@RequiredArgsConstructor
 public class Parser {
+	// part of AstCache's key: bump whenever the AST built for a source changes
+	static final int VERSION = 1;
 	private static final int MAX_PARAMS_ARGS = 255;
 	private static class ParseError extends RuntimeException {}
 
-	private final List<Token> tokens;
-	private int current = 0;
+	// What encloses a token that checkLoopExits() passes over: the kinds a
+	// '}' closes, then the ones that end with the statement they take.
+	private static final byte IN_BLOCK = 0;
+	private static final byte IN_FUNCTION = 1;
+	private static final byte IN_CLASS = 2;
+	private static final byte IN_LOOP = 3;
+	private static final byte IN_THEN = 4;
+	private static final byte IN_ELSE = 5;
+
+	// How tightly each infix operator binds, loosest first. NONE means the
+	// token can't continue an expression.
+	private enum Precedence {
+		NONE, OR, AND, EQUALITY, COMPARISON, TERM, FACTOR, UNARY, CALL;
+
+		private static final Precedence[] LEVELS = values();
+
+		Precedence next() {
+			return LEVELS[ordinal() + 1];
+		}
+	}
+
+	private static final Precedence[] INFIX = new Precedence[TokenType.values().length];
+
+	static {
+		Arrays.fill(INFIX, Precedence.NONE);
+		INFIX[OR.ordinal()] = Precedence.OR;
+		INFIX[AND.ordinal()] = Precedence.AND;
+		INFIX[BANG_EQUAL.ordinal()] = Precedence.EQUALITY;
+		INFIX[EQUAL_EQUAL.ordinal()] = Precedence.EQUALITY;
+		INFIX[GREATER.ordinal()] = Precedence.COMPARISON;
+		INFIX[GREATER_EQUAL.ordinal()] = Precedence.COMPARISON;
+		INFIX[LESS.ordinal()] = Precedence.COMPARISON;
+		INFIX[LESS_EQUAL.ordinal()] = Precedence.COMPARISON;
+		INFIX[PLUS.ordinal()] = Precedence.TERM;
+		INFIX[MINUS.ordinal()] = Precedence.TERM;
+		INFIX[STAR.ordinal()] = Precedence.FACTOR;
+		INFIX[SLASH.ordinal()] = Precedence.FACTOR;
+		INFIX[LEFT_PAREN.ordinal()] = Precedence.CALL;
+		INFIX[DOT.ordinal()] = Precedence.CALL;
+	}
+
+	private final TokenCursor tokens;
+	private final ErrorReporter reporter;
+	// set in lazy mode, where top-level function bodies are only skipped
+	private final TokenBuffer lazyTokens;
+	private final AtomicInteger sites;
+	private int blockDepth = 0;
+
+	Parser(TokenCursor tokens, ErrorReporter reporter) {
+		this.tokens = tokens;
+		this.reporter = reporter;
+		this.lazyTokens = null;
+		this.sites = null;
+	}
+
+	// Lazy mode; sites is the counter the Resolver numbers inline cache sites
+	// with, handed to each LazyBody so bodies compiled later continue it.
+	Parser(TokenBuffer tokens, ErrorReporter reporter, AtomicInteger sites) {
+		this.tokens = tokens;
+		this.reporter = reporter;
+		this.lazyTokens = tokens;
+		this.sites = sites;
+	}
+
+	Parser(TokenSource tokens, ErrorReporter reporter) {
+		this(new TokenWindow(tokens), reporter);
+	}
+
+	Parser(List<Token> tokens, ErrorReporter reporter) {
+		this(tokens.iterator()::next, reporter);
+	}
 
 	List<Stmt> parse() {
 		List<Stmt> statements = new ArrayList<>();
@@ -40,19 +109,19 @@ public class Parser {
 	private Stmt classDeclaration() {
 		Token name = consume(IDENTIFIER, "Expect class name.");
 
-		consume(LEFT_BRACE, "Expect '{' before class body");
+		expect(LEFT_BRACE, "Expect '{' before class body");
 		List<Stmt.Function> methods = new ArrayList<>();
 		while (!check(RIGHT_BRACE) && isNotAtEnd()) {
 			methods.add(function("method"));
 		}
-		consume(RIGHT_BRACE, "Expect '}' after class body.");
+		expect(RIGHT_BRACE, "Expect '}' after class body.");
 
 		return new Stmt.Class(name, methods);
 	}
 
 	private Stmt.Function function(String kind) {
 		Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
-		consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
+		expect(LEFT_PAREN, "Expect '(' after " + kind + " name.");
 		List<Token> parameters = new ArrayList<>();
 		if (!check(RIGHT_PAREN)) {
 			do {
@@ -62,12 +131,151 @@ public class Parser {
 				parameters.add(consume(IDENTIFIER, "Expect parameter name."));
 			} while (match(COMMA));
 		}
-		consume(RIGHT_PAREN, "Expect ')' after parameters.");
-		consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+		expect(RIGHT_PAREN, "Expect ')' after parameters.");
+		expect(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+		if (lazyTokens != null && blockDepth == 0) {
+			int start = lazyTokens.position();
+			skipBody();
+			return new Stmt.Function(name, parameters, new LazyBody(lazyTokens, start, sites));
+		}
 		List<Stmt> body = block();
 		return new Stmt.Function(name, parameters, body);
 	}
 
+	// Parses a body skipped in lazy mode; the tokens are positioned just after its '{'.
+	List<Stmt> functionBody() {
+		return block();
+	}
+
+	// Skips a function body without building anything from it, the tokens
+	// positioned just after its '{'. Only braces are matched, and a body with
+	// a 'break' or 'continue' in it is walked again to check they're inside
+	// loops, so those stay compile errors; the rest of a lazy body is checked
+	// by the parse at its first call. A 'return' needs no check, since the
+	// body is a function's.
+	private void skipBody() {
+		int start = lazyTokens.position();
+		boolean exitsLoop = false;
+		int open = 1;
+		while (isNotAtEnd()) {
+			TokenType type = tokens.peekType();
+			advance();
+			if (type == LEFT_BRACE) {
+				++open;
+			}
+			else if (type == RIGHT_BRACE) {
+				if (--open == 0) {
+					if (exitsLoop) { checkLoopExits(start); }
+					return;
+				}
+			}
+			else if (type == BREAK || type == CONTINUE) {
+				exitsLoop = true;
+			}
+		}
+		throw error(peek(), "Expect '}' after block.");
+	}
+
+	// Follows the statements of a brace-matched body only as far as knowing
+	// which loop each 'break' or 'continue' is in: one loop keeping its own
+	// stack of what encloses each token, ending after the body's '}'.
+	private void checkLoopExits(int start) {
+		lazyTokens.seek(start);
+		byte[] open = new byte[16];
+		int depth = 0;
+		open[depth++] = IN_FUNCTION;
+		// ';' only ends a statement outside parentheses, which for clauses aren't
+		int parens = 0;
+		// what the next '{' opens, once a 'func' or 'class' says
+		byte brace = IN_BLOCK;
+
+		while (depth > 0) {
+			TokenType type = tokens.peekType();
+			tokens.advance();
+			switch (type) {
+				case LEFT_PAREN:
+					++parens;
+					break;
+				case RIGHT_PAREN:
+					if (parens > 0) { --parens; }
+					break;
+				case WHILE:
+				case FOR:
+					open = push(open, depth++, IN_LOOP);
+					break;
+				case IF:
+					open = push(open, depth++, IN_THEN);
+					break;
+				case FUNC:
+					brace = IN_FUNCTION;
+					break;
+				case CLASS:
+					brace = IN_CLASS;
+					break;
+				case BREAK:
+				case CONTINUE:
+					if (!inLoop(open, depth)) {
+						reporter.error(previous(), "Can't use '" + previous().lexeme() + "' outside of a loop.");
+					}
+					break;
+				case LEFT_BRACE: {
+					// a method body, or a block, function or class as above
+					byte kind = open[depth - 1] == IN_CLASS ? IN_FUNCTION : brace;
+					open = push(open, depth++, kind);
+					brace = IN_BLOCK;
+					parens = 0;
+					break;
+				}
+				case RIGHT_BRACE: {
+					// a loop or branch still waiting for its statement doesn't compile anyway
+					while (open[depth - 1] >= IN_LOOP) { --depth; }
+					byte closed = open[--depth];
+					if (depth > 0 && (closed != IN_FUNCTION || open[depth - 1] != IN_CLASS)) {
+						depth = endStatement(open, depth);
+					}
+					brace = IN_BLOCK;
+					parens = 0;
+					break;
+				}
+				case SEMICOLON:
+					if (parens == 0) {
+						depth = endStatement(open, depth);
+						brace = IN_BLOCK;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	// Closes the loops and if branches whose body was the statement that just
+	// ended, up to an if that goes on with an 'else'.
+	private int endStatement(byte[] open, int depth) {
+		while (open[depth - 1] >= IN_LOOP) {
+			if (open[depth - 1] == IN_THEN && match(ELSE)) {
+				open[depth - 1] = IN_ELSE;
+				return depth;
+			}
+			--depth;
+		}
+		return depth;
+	}
+
+	private static byte[] push(byte[] open, int depth, byte kind) {
+		if (depth == open.length) { open = Arrays.copyOf(open, depth * 2); }
+		open[depth] = kind;
+		return open;
+	}
+
+	// whether a 'break' there would leave a loop rather than its function
+	private static boolean inLoop(byte[] open, int depth) {
+		for (int i = depth - 1; open[i] != IN_FUNCTION; --i) {
+			if (open[i] == IN_LOOP) { return true; }
+		}
+		return false;
+	}
+
 	private Stmt varDeclaration() {
 		Token name = consume(IDENTIFIER, "Expect variable name.");
 
@@ -76,7 +284,7 @@ public class Parser {
 			initializer = expression();
 		}
 
-		consume(SEMICOLON, "Expect ';' after variable declaration.");
+		expect(SEMICOLON, "Expect ';' after variable declaration.");
 		return new Stmt.Var(name, initializer);
 	}
 
@@ -90,6 +298,12 @@ public class Parser {
 		else if (match(RETURN)) {
 			return returnStatement();
 		}
+		else if (match(BREAK)) {
+			return breakStatement();
+		}
+		else if (match(CONTINUE)) {
+			return continueStatement();
+		}
 		else if (match(WHILE)) {
 			return whileStatement();
 		}
@@ -105,9 +319,9 @@ public class Parser {
 	}
 
 	private Stmt ifStatement() {
-		consume(LEFT_PAREN, "Expect '(' after 'if'.");
+		expect(LEFT_PAREN, "Expect '(' after 'if'.");
 		Expr condition = expression();
-		consume(RIGHT_PAREN, "Expect ')' after if condition.");
+		expect(RIGHT_PAREN, "Expect ')' after if condition.");
 
 		Stmt thenBranch = statement();
 		Stmt elseBranch = match(ELSE) ? statement() : null;
@@ -117,7 +331,7 @@ public class Parser {
 
 	private Stmt printStatement() {
 		Expr value = expression();
-		consume(SEMICOLON, "Expect ';' after value.");
+		expect(SEMICOLON, "Expect ';' after value.");
 		return new Stmt.Print(value);
 	}
 
@@ -128,21 +342,33 @@ public class Parser {
 			value = expression();
 		}
 
-		consume(SEMICOLON, "Expect ';' after return value.");
+		expect(SEMICOLON, "Expect ';' after return value.");
 		return new Stmt.Return(keyword, value);
 	}
 
+	private Stmt breakStatement() {
+		Token keyword = previous();
+		expect(SEMICOLON, "Expect ';' after 'break'.");
+		return new Stmt.Break(keyword);
+	}
+
+	private Stmt continueStatement() {
+		Token keyword = previous();
+		expect(SEMICOLON, "Expect ';' after 'continue'.");
+		return new Stmt.Continue(keyword);
+	}
+
 	private Stmt whileStatement() {
-		consume(LEFT_PAREN, "Expect '(' after 'while'.");
+		expect(LEFT_PAREN, "Expect '(' after 'while'.");
 		Expr condition = expression();
-		consume(RIGHT_PAREN, "Expect ')' after condition.");
+		expect(RIGHT_PAREN, "Expect ')' after condition.");
 		Stmt body = statement();
 
-		return new Stmt.While(condition, body);
+		return new Stmt.While(condition, body, null);
 	}
 
 	private Stmt forStatement() {
-		consume(LEFT_PAREN, "Expect '(' after 'for'.");
+		expect(LEFT_PAREN, "Expect '(' after 'for'.");
 
 		Stmt initializer;
 		if (match(SEMICOLON)) {
@@ -159,25 +385,21 @@ public class Parser {
 		if(!check(SEMICOLON)) {
 			condition = expression();
 		}
-		consume(SEMICOLON, "Expect';' after loop condition.");
+		expect(SEMICOLON, "Expect';' after loop condition.");
 
 		Expr increment = null;
 		if(!check(RIGHT_PAREN)) {
 			increment = expression();
 		}
-		consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+		expect(RIGHT_PAREN, "Expect ')' after for clauses.");
 
 		Stmt body = statement();
 
-		if (increment != null) {
-			body = new Stmt.Block(List.of(body, new Stmt.Expression(increment)));
-		}
-
 		if (condition == null) {
 			condition = new Expr.Literal(true);
 		}
 
-		body = new Stmt.While(condition, body);
+		body = new Stmt.While(condition, body, increment);
 
 		if (initializer != null) {
 			body = new Stmt.Block(List.of(initializer, body));
@@ -189,17 +411,19 @@ public class Parser {
 	private List<Stmt> block() {
 		List<Stmt> statements = new ArrayList<>();
 
+		++blockDepth;
 		while (!check(RIGHT_BRACE) && isNotAtEnd()) {
 			statements.add(declaration());
 		}
+		--blockDepth;
 
-		consume(RIGHT_BRACE, "Expect '}' after block.");
+		expect(RIGHT_BRACE, "Expect '}' after block.");
 		return statements;
 	}
 
 	private Stmt expressionStatement() {
 		Expr value = expression();
-		consume(SEMICOLON, "Expect ';' after value.");
+		expect(SEMICOLON, "Expect ';' after value.");
 		return new Stmt.Expression(value);
 	}
 
@@ -207,8 +431,10 @@ public class Parser {
 		return assignment();
 	}
 
+	// Assignment is right-associative and its target is only known once the
+	// left side is parsed, so it stays outside the precedence table.
 	private Expr assignment() {
-		Expr expr = or();
+		Expr expr = expression(Precedence.OR);
 
 		if (match(EQUAL)) {
 			Token equals = previous();
@@ -229,79 +455,75 @@ public class Parser {
 		return expr;
 	}
 
-	private Expr or() {
-		return parseLogicalOp(this::and, OR);
-	}
-
-	private Expr and() {
-		return parseLogicalOp(this::equality, AND);
-	}
-
-	private Expr parseLogicalOp(Supplier<Expr> exprType, TokenType opType) {
-		Expr expr = exprType.get();
-		while (match(opType)) {
-			Token operator = previous();
-			Expr right = exprType.get();
-			expr = new Expr.Logical(expr, operator, right);
-		}
-
-		return expr;
-	}
-
-	private Expr equality() {
-		return parseBinOp(this::comparison, List.of(BANG_EQUAL, EQUAL_EQUAL));
-	}
-
-	private Expr comparison() {
-		return parseBinOp(this::term, List.of(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL));
-	}
-
-	private Expr term() {
-		return parseBinOp(this::factor, List.of(PLUS, MINUS));
-	}
+	// Precedence climbing: parse an operand, then keep folding in infix
+	// operators that bind at least as tightly as minimum. Operands of a binary
+	// operator are parsed one level up, which makes them left-associative.
+	private Expr expression(Precedence minimum) {
+		Expr expr = prefix();
 
-	private Expr factor() {
-		return parseBinOp(this::unary, List.of(STAR, SLASH));
-	}
+		while (true) {
+			TokenType type = tokens.peekType();
+			Precedence precedence = INFIX[type.ordinal()];
+			if (precedence.compareTo(minimum) < 0) { break; }
 
-	private Expr parseBinOp(Supplier<Expr> exprType, List<TokenType> opTypes) {
-		Expr expr = exprType.get();
-		while (match(opTypes)) {
-			Token operator = previous();
-			Expr right = exprType.get();
-			expr = new Expr.Binary(expr, operator, right);
+			advance();
+			expr = infix(expr, type, precedence);
 		}
 
 		return expr;
 	}
 
-	private Expr unary() {
-		if (match(List.of(BANG, MINUS))) {
-			Token operator = previous();
-			Expr right = primary();
-			return new Expr.Unary(operator, right);
+	private Expr infix(Expr left, TokenType type, Precedence precedence) {
+		switch (type) {
+			case LEFT_PAREN:
+				return finishCall(left);
+			case DOT:
+				return new Expr.Get(left, consume(IDENTIFIER, "Expect property name after '.'."));
+			case AND:
+			case OR: {
+				Token operator = previous();
+				return new Expr.Logical(left, operator, expression(precedence.next()));
+			}
+			default: {
+				Token operator = previous();
+				return new Expr.Binary(left, operator, expression(precedence.next()));
+			}
 		}
-
-		return call();
 	}
 
-	private Expr call() {
-		Expr expr = primary();
-
-		while (true) {
-			if (match(LEFT_PAREN)) {
-				expr = finishCall(expr);
-			}
-			else if (match(DOT)) {
-				Token name = consume(IDENTIFIER, "Expect property name after '.'.");
-				expr = new Expr.Get(expr, name);
+	private Expr prefix() {
+		switch (tokens.peekType()) {
+			case BANG:
+			case MINUS: {
+				advance();
+				Token operator = previous();
+				return new Expr.Unary(operator, expression(Precedence.UNARY));
 			}
-			else {
-				break;
+			case FALSE:
+				advance();
+				return new Expr.Literal(false);
+			case TRUE:
+				advance();
+				return new Expr.Literal(true);
+			case NIL:
+				advance();
+				return new Expr.Literal(null);
+			case NUMBER:
+			case STRING:
+				advance();
+				return new Expr.Literal(previous().literal);
+			case IDENTIFIER:
+				advance();
+				return new Expr.Variable(previous());
+			case LEFT_PAREN: {
+				advance();
+				Expr expr = expression();
+				expect(RIGHT_PAREN, "Expect ')' after expression.");
+				return new Expr.Grouping(expr);
 			}
+			default:
+				throw error(peek(), "Expect expression.");
 		}
-
-		return expr;
 	}
 
 	private Expr finishCall(Expr callee) {
@@ -320,42 +542,10 @@ public class Parser {
 		return new Expr.Call(callee, paren, arguments);
 	}
 
-	private Expr primary() {
-		if (match(FALSE)) {
-			return new Expr.Literal(false);
-		}
-		else if (match(TRUE)) {
-			return new Expr.Literal(true);
-		}
-		else if (match(NIL)) {
-			return new Expr.Literal(null);
-		}
-		else if (match(List.of(NUMBER, STRING))) {
-			return new Expr.Literal(previous().literal);
-		}
-		else if (match(IDENTIFIER)) {
-			return new Expr.Variable(previous());
-		}
-		else if (match(LEFT_PAREN)) {
-			Expr expr = expression();
-			consume(RIGHT_PAREN, "Expect ')' after expression.");
-			return new Expr.Grouping(expr);
-		}
-		else {
-			throw error(peek(), "Expect expression.");
-		}
-	}
-
 	private boolean match(TokenType type) {
-		return match(List.of(type));
-	}
-
-	private boolean match(List<TokenType> types) {
-		for (TokenType type : types) {
-			if (check(type)) {
-				advance();
-				return true;
-			}
+		if (check(type)) {
+			advance();
+			return true;
 		}
 		return false;
 	}
@@ -364,27 +554,32 @@ public class Parser {
 		if (isAtEnd()) {
 			return false;
 		}
-		return peek().type == type;
+		return tokens.peekType() == type;
 	}
 
-	private Token advance() {
+	private void advance() {
 		if (isNotAtEnd()) {
-			++current;
+			tokens.advance();
 		}
-		return previous();
 	}
 
 	private Token previous() {
-		return tokens.get(current - 1);
+		return tokens.previous();
 	}
 
 	private Token peek() {
-		return tokens.get(current);
+		return tokens.peek();
 	}
 
 	private Token consume(TokenType type, String message) {
+		expect(type, message);
+		return previous();
+	}
+
+	// consume() for tokens the AST doesn't keep
+	private void expect(TokenType type, String message) {
 		if (check(type)) {
-			return advance();
+			advance();
 		}
 		else {
 			throw error(peek(), message);
@@ -392,7 +587,7 @@ public class Parser {
 	}
 
 	private ParseError error(Token token, String message) {
-		Luca.error(token, message);
+		reporter.error(token, message);
 		return new ParseError();
 	}
 
@@ -401,7 +596,7 @@ public class Parser {
 		while (isNotAtEnd()) {
 			if (previous().type == SEMICOLON) { return; }
 
-			if (checkKeyword(peek().type)) { return; }
+			if (checkKeyword(tokens.peekType())) { return; }
 
 			advance();
 		}
@@ -414,7 +609,7 @@ public class Parser {
 	}
 
 	private boolean isAtEnd() {
-		return peek().type == EOF;
+		return tokens.peekType() == EOF;
 	}
 
 	private boolean isNotAtEnd() {
@@ -0,0 +1,71 @@
+package com.luca;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A compiled script: the optimized, resolved AST, plus bytecode when it's for
+// the VM. Nothing in it changes once compiled, apart from lazy bodies, which
+// compile under a lock, so one Program can run on any number of Contexts and
+// threads at once.
+public final class Program {
+	final Luca.Backend backend;
+	final List<Stmt> statements;
+	// VM backend only
+	final CompiledFunction script;
+
+	private Program(Luca.Backend backend, List<Stmt> statements, CompiledFunction script) {
+		this.backend = backend;
+		this.statements = statements;
+		this.script = script;
+	}
+
+	public static Program compile(CharSequence source) throws LucaException {
+		return compile(source, Luca.Backend.INTERPRETER);
+	}
+
+	public static Program compile(CharSequence source, Luca.Backend backend) throws LucaException {
+		ErrorReporter reporter = new ErrorReporter();
+		Program program = compile(source, backend, false, reporter);
+		if (program == null) { throw reporter.toException(); }
+		return program;
+	}
+
+	// Scans, parses, resolves and optimizes; null if any of it reported errors.
+	// Only the tree-walker can parse a body on first call.
+	static Program compile(CharSequence source, Luca.Backend backend, boolean lazy, ErrorReporter reporter) {
+		// lazy bodies go on numbering inline cache sites where the Resolver stopped
+		AtomicInteger sites = new AtomicInteger();
+		Parser parser = lazy
+						? new Parser(new Scanner(source, reporter).scanBuffer(), reporter, sites)
+						: new Parser(new Scanner(source, reporter), reporter);
+		List<Stmt> statements = parser.parse();
+		if (reporter.hadError()) { return null; }
+
+		new Resolver(reporter, sites).resolve(statements);
+		if (reporter.hadError()) { return null; }
+
+		statements = new Optimizer().optimize(statements);
+
+		return of(statements, backend, reporter);
+	}
+
+	// For statements that are already resolved, such as ones from the AstCache.
+	static Program of(List<Stmt> statements, Luca.Backend backend, ErrorReporter reporter) {
+		CompiledFunction script = null;
+		if (backend == Luca.Backend.VM) {
+			script = new Compiler(reporter).compile(statements);
+			if (reporter.hadError()) { return null; }
+		}
+		return new Program(backend, statements, script);
+	}
+
+	public Luca.Backend backend() {
+		return backend;
+	}
+
+	// Runs the program once on a fresh Context.
+	public void run(PrintStream out) throws LucaException {
+		new Context(backend, out).run(this);
+	}
+}
@@ -0,0 +1,36 @@
+package com.luca;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compiled Programs by source text, evicting the least recently used once
+// it's full. One cache is shared by every engine a LucaScriptEngineFactory
+// creates; Programs are immutable, so engines on different threads can run
+// the same one.
+class ProgramCache {
+	private final Map<String, Program> programs;
+
+	ProgramCache(int capacity) {
+		programs = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Program> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	Program get(String source) throws LucaException {
+		synchronized (programs) {
+			Program program = programs.get(source);
+			if (program != null) { return program; }
+		}
+
+		// compiled outside the lock; threads that miss on the same source at
+		// once each compile it, and the last one in stays cached
+		Program program = Program.compile(source);
+		synchronized (programs) {
+			programs.put(source, program);
+		}
+		return program;
+	}
+}
@@ -0,0 +1,100 @@
+package com.luca;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+
+// Inline cache for Expr.Get and Expr.Set sites, keyed by receiver shape.
+// Shapes belong to exactly one class, so a shape also pins down which method
+// a get resolves to when the name is not a field.
+class PropertyCache extends InlineCache {
+	private static final Entry[] EMPTY = new Entry[0];
+
+	@RequiredArgsConstructor
+	private static class Entry {
+		final Shape shape;
+		final int slot;
+		final LucaCallable method;
+		// shape after a set that adds the field, null when it already exists
+		final Shape next;
+	}
+
+	// replaced wholesale on update so a racing reader never sees a torn array
+	private Entry[] entries = EMPTY;
+
+	PropertyCache(String kind, Token site) {
+		super(kind + " '" + site.lexeme() + "'", site);
+	}
+
+	Object get(LucaInstance instance) {
+		Shape shape = instance.shape();
+		for (Entry entry : entries) {
+			if (entry.shape == shape) {
+				++hits;
+				return entry.method != null ? entry.method : instance.getField(entry.slot);
+			}
+		}
+
+		++misses;
+		int slot = shape.slotOf(site.lexeme());
+		if (slot != -1) {
+			add(new Entry(shape, slot, null, null));
+			return instance.getField(slot);
+		}
+
+		LucaCallable method = instance.klass().findMethod(site.lexeme());
+		if (method != null) {
+			add(new Entry(shape, -1, method, null));
+			return method;
+		}
+
+		return instance.get(site);
+	}
+
+	void set(LucaInstance instance, Object value) {
+		Shape shape = instance.shape();
+		for (Entry entry : entries) {
+			if (entry.shape == shape) {
+				++hits;
+				if (entry.next == null) {
+					instance.setField(entry.slot, value);
+				}
+				else {
+					instance.addField(entry.next, entry.slot, value);
+				}
+				return;
+			}
+		}
+
+		++misses;
+		int slot = shape.slotOf(site.lexeme());
+		if (slot != -1) {
+			add(new Entry(shape, slot, null, null));
+			instance.setField(slot, value);
+			return;
+		}
+
+		Shape next = shape.withField(site.lexeme());
+		add(new Entry(shape, shape.size(), null, next));
+		instance.addField(next, shape.size(), value);
+	}
+
+	private void add(Entry entry) {
+		if (megamorphic) { return; }
+
+		if (entries.length == MAX_ENTRIES) {
+			megamorphic = true;
+			entries = EMPTY;
+			return;
+		}
+
+		Entry[] updated = Arrays.copyOf(entries, entries.length + 1);
+		updated[entries.length] = entry;
+		entries = updated;
+	}
+
+	@Override
+	int entryCount() {
+		return entries.length;
+	}
+}
@@ -1,36 +1,67 @@
 package com.luca;
 
-import lombok.RequiredArgsConstructor;
-
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
-@RequiredArgsConstructor
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	// part of AstCache's key: bump whenever what's resolved onto the AST, or
+	// which scripts are rejected, changes
+	static final int VERSION = 1;
+
 	private enum FunctionType {
 		NONE,
 		FUNCTION,
 		METHOD
 	}
 
-	private final Interpreter interpreter;
-	private final Stack<HashMap<String, Boolean>> scopes = new Stack<>();
+	private static class Local {
+		final int slot;
+		boolean defined = false;
+
+		Local(int slot) {
+			this.slot = slot;
+		}
+	}
+
+	private final ErrorReporter reporter;
+	// numbers call, get and set sites for the interpreters' inline caches
+	private final AtomicInteger sites;
+	private final Stack<HashMap<String, Local>> scopes = new Stack<>();
 	private FunctionType currentFunction = FunctionType.NONE;
+	private int loopDepth = 0;
+
+	Resolver(ErrorReporter reporter) {
+		this(reporter, new AtomicInteger());
+	}
+
+	Resolver(ErrorReporter reporter, AtomicInteger sites) {
+		this.reporter = reporter;
+		this.sites = sites;
+	}
 
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
 		beginScope();
 		resolve(stmt.statements);
-		endScope();
+		stmt.slotCount = endScope();
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		if (loopDepth == 0) {
+			reporter.error(stmt.keyword, "Can't use 'break' outside of a loop.");
+		}
 		return null;
 	}
 
 	@Override
 	public Void visitClassStmt(Stmt.Class stmt) {
-		declare(stmt.name);
+		stmt.slot = declare(stmt.name);
 		define(stmt.name);
 
 		for (Stmt.Function method : stmt.methods) {
@@ -41,6 +72,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		if (loopDepth == 0) {
+			reporter.error(stmt.keyword, "Can't use 'continue' outside of a loop.");
+		}
+		return null;
+	}
+
 	@Override
 	public Void visitExpressionStmt(Stmt.Expression stmt) {
 		resolve(stmt.expression);
@@ -49,25 +88,35 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitFunctionStmt(Stmt.Function stmt) {
-		declare(stmt.name);
+		stmt.slot = declare(stmt.name);
 		define(stmt.name);
 		resolveFunction(stmt, FunctionType.FUNCTION);
 		return null;
 	}
 
 	private void resolveFunction(Stmt.Function function, FunctionType type) {
+		// resolved on first call, from global scope, by LazyBody
+		if (function.lazyBody != null) { return; }
+
+		resolveBody(function, function.body, type);
+	}
+
+	private void resolveBody(Stmt.Function function, List<Stmt> body, FunctionType type) {
 		Resolver.FunctionType enclosingFunction = currentFunction;
+		int enclosingLoopDepth = loopDepth;
 		currentFunction = type;
+		loopDepth = 0;
 
 		beginScope();
 		for (Token param : function.params) {
 			declare(param);
 			define(param);
 		}
-		resolve(function.body);
-		endScope();
+		resolve(body);
+		function.slotCount = endScope();
 
 		currentFunction = enclosingFunction;
+		loopDepth = enclosingLoopDepth;
 	}
 
 	@Override
@@ -88,16 +137,28 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitReturnStmt(Stmt.Return stmt) {
 		if (currentFunction == FunctionType.NONE) {
-			Luca.error(stmt.keyword, "Can't return from top level code.");
+			reporter.error(stmt.keyword, "Can't return from top level code.");
 		}
 
-		if (stmt.value != null) { resolve(stmt.value); }
+		if (stmt.value != null) {
+			resolve(stmt.value);
+			if (currentFunction != FunctionType.NONE) { markTailCall(stmt.value); }
+		}
 		return null;
 	}
 
+	static void markTailCall(Expr value) {
+		while (value instanceof Expr.Grouping) {
+			value = ((Expr.Grouping) value).expression;
+		}
+		if (value instanceof Expr.Call) {
+			((Expr.Call) value).tail = true;
+		}
+	}
+
 	@Override
 	public Void visitVarStmt(Stmt.Var stmt) {
-		declare(stmt.name);
+		stmt.slot = declare(stmt.name);
 		if (stmt.initializer != null) {
 			resolve(stmt.initializer);
 		}
@@ -108,14 +169,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitWhileStmt(Stmt.While stmt) {
 		resolve(stmt.condition);
+		++loopDepth;
 		resolve(stmt.body);
+		--loopDepth;
+		if (stmt.increment != null) { resolve(stmt.increment); }
 		return null;
 	}
 
 	@Override
 	public Void visitAssignExpr(Expr.Assign expr) {
 		resolve(expr.value);
-		resolveLocal(expr, expr.name);
+
+		expr.depth = resolveLocal(expr.name);
+		if (expr.depth != -1) {
+			expr.slot = slotOf(expr.depth, expr.name);
+		}
 		return null;
 	}
 
@@ -127,6 +195,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitCallExpr(Expr.Call expr) {
+		expr.site = sites.getAndIncrement();
 		resolve(expr.callee);
 
 		for (Expr argument : expr.arguments) {
@@ -138,6 +207,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitGetExpr(Expr.Get expr) {
+		expr.site = sites.getAndIncrement();
 		resolve(expr.object);
 		return null;
 	}
@@ -161,6 +231,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitSetExpr(Expr.Set expr) {
+		expr.site = sites.getAndIncrement();
 		resolve(expr.object);
 		resolve(expr.value);
 		return null;
@@ -174,14 +245,26 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
-		if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-			Luca.error(expr.name, "Can't read local variable in its own initializer.");
+		if (!scopes.isEmpty()) {
+			Local declared = scopes.peek().get(expr.name.lexeme());
+			if (declared != null && !declared.defined) {
+				reporter.error(expr.name, "Can't read local variable in its own initializer.");
+			}
 		}
 
-		resolveLocal(expr, expr.name);
+		expr.depth = resolveLocal(expr.name);
+		if (expr.depth != -1) {
+			expr.slot = slotOf(expr.depth, expr.name);
+		}
 		return null;
 	}
 
+	// For LazyBody, which still has lazyBody set while it resolves, and only
+	// makes body the function's once it resolved without errors.
+	void resolveBody(Stmt.Function function, List<Stmt> body) {
+		resolveBody(function, body, FunctionType.FUNCTION);
+	}
+
 	void resolve(List<Stmt> statements) {
 		for (Stmt statement : statements) {
 			resolve(statement);
@@ -197,35 +280,43 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	}
 
 	private void beginScope() {
-		scopes.push(new HashMap<String, Boolean>());
+		scopes.push(new HashMap<String, Local>());
 	}
 
-	private void endScope() {
-		scopes.pop();
+	private int endScope() {
+		return scopes.pop().size();
 	}
 
-	private void declare(Token name) {
-		if (scopes.isEmpty()) { return; }
+	private int declare(Token name) {
+		if (scopes.isEmpty()) { return -1; }
 
-		Map<String, Boolean> scope = scopes.peek();
-		if (scope.containsKey(name.lexeme)) {
-			Luca.error(name, "Already a variable with this name in this scope.");
+		Map<String, Local> scope = scopes.peek();
+		if (scope.containsKey(name.lexeme())) {
+			reporter.error(name, "Already a variable with this name in this scope.");
+			return scope.get(name.lexeme()).slot;
 		}
-		scope.put(name.lexeme, false);
+
+		Local local = new Local(scope.size());
+		scope.put(name.lexeme(), local);
+		return local.slot;
 	}
 
 	private void define(Token name) {
 		if (scopes.isEmpty()) { return; }
-		scopes.peek().put(name.lexeme, true);
+		scopes.peek().get(name.lexeme()).defined = true;
 	}
 
-	private void resolveLocal(Expr expr, Token name) {
+	private int resolveLocal(Token name) {
 		for (int i = scopes.size() - 1; i >= 0; --i) {
-			if (scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr, scopes.size() - 1 - i);
-				return;
+			if (scopes.get(i).containsKey(name.lexeme())) {
+				return scopes.size() - 1 - i;
 			}
 		}
+		return -1;
+	}
+
+	private int slotOf(int depth, Token name) {
+		return scopes.get(scopes.size() - 1 - depth).get(name.lexeme()).slot;
 	}
 
 }
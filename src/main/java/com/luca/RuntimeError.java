@@ -2,9 +2,27 @@ package com.luca;
 
 public class RuntimeError extends RuntimeException {
 	final Token token;
+	final int line;
 
 	RuntimeError(Token token, String message) {
 		super(message);
 		this.token = token;
+		this.line = token.line;
+	}
+
+	RuntimeError(int line, String message) {
+		super(message);
+		this.token = null;
+		this.line = line;
+	}
+
+	// For natives, which don't know where they were called from; the call
+	// expression gives the error its line with at().
+	RuntimeError(String message) {
+		this(-1, message);
+	}
+
+	RuntimeError at(Token site) {
+		return line == -1 ? new RuntimeError(site, getMessage()) : this;
 	}
 }
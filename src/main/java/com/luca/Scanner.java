@@ -1,16 +1,12 @@
 package com.luca;
 
-import lombok.RequiredArgsConstructor;
-import org.apache.commons.lang3.StringUtils;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static com.luca.TokenType.*;
 
-@RequiredArgsConstructor
-class Scanner {
+class Scanner implements TokenSource {
   private static final Map<String, TokenType> keywords = Map.ofEntries(
     Map.entry("true", TRUE),
     Map.entry("false", FALSE),
@@ -19,6 +15,8 @@ class Scanner {
     Map.entry("and", AND),
     Map.entry("or", OR),
     Map.entry("class", CLASS),
+    Map.entry("break", BREAK),
+    Map.entry("continue", CONTINUE),
     Map.entry("super", SUPER),
     Map.entry("nil", NIL),
     Map.entry("print", PRINT),
@@ -30,75 +28,134 @@ class Scanner {
     Map.entry("while", WHILE)
   );
 
-  private final String source;
-  private final List<Token> tokens = new ArrayList<>();
+  // powers of ten that are exact doubles, for the number fast path
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+    1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+  private static final int MAX_EXACT_DIGITS = 15;
+
+  private final CharSequence source;
+  private final ErrorReporter reporter;
+  private final SymbolTable symbols = new SymbolTable(keywords);
   private int start = 0;
   private int current = 0;
   private int line = 1;
 
+  Scanner(CharSequence source, ErrorReporter reporter) {
+    this.source = source;
+    this.reporter = reporter;
+  }
+
   List<Token> scanTokens() {
+    List<Token> tokens = new ArrayList<>();
+    Token token;
+    do {
+      token = next();
+      tokens.add(token);
+    } while (token.type != EOF);
+    return tokens;
+  }
+
+  // Scans just far enough to produce one token, so a Parser can pull tokens
+  // as it goes instead of waiting for the whole list.
+  @Override
+  public Token next() {
+    TokenType type = scanNext();
+    return token(type, source, symbols, start, current, line);
+  }
+
+  // Records every token as primitives in a TokenBuffer; Token objects are
+  // only made for the ones the parser asks for.
+  TokenBuffer scanBuffer() {
+    TokenBuffer buffer = new TokenBuffer(source, symbols);
+    TokenType type;
+    do {
+      type = scanNext();
+      buffer.add(type, start, current - start, line);
+    } while (type != EOF);
+    return buffer;
+  }
+
+  static Token token(TokenType type, CharSequence source, SymbolTable symbols, int start, int end, int line) {
+    if (type.text != null) {
+      return new Token(type, type.text, null, line);
+    }
+
+    switch (type) {
+      case NUMBER:
+        return new Token(type, source, start, end - start, parseNumber(source, start, end), line);
+      case STRING:
+        return new Token(type, source, start, end - start, source.subSequence(start + 1, end - 1).toString(), line);
+      default:
+        // identifiers and keywords share their interned name
+        return new Token(type, symbols.name(symbols.intern(source, start, end)), null, line);
+    }
+  }
+
+  // Advances past the next token and returns its type; the token's text is
+  // source[start, current).
+  private TokenType scanNext() {
     while (isNotAtEnd()) {
       start = current;
-      scanToken();
+      TokenType type = scanToken();
+      if (type != null) { return type; }
     }
-
-    tokens.add(new Token(EOF, StringUtils.EMPTY, null, line));
-    return tokens;
+    start = current;
+    return EOF;
   }
 
-  private void scanToken() {
+  // Returns null for whitespace, comments and errors.
+  private TokenType scanToken() {
     char c = advance();
     switch (c) {
-      case '(': addToken(LEFT_PAREN); break;
-      case ')': addToken(RIGHT_PAREN); break;
-      case '{': addToken(LEFT_BRACE); break;
-      case '}': addToken(RIGHT_BRACE); break;
-      case ',': addToken(COMMA); break;
-      case '.': addToken(DOT); break;
-      case '-': addToken(MINUS); break;
-      case '+': addToken(PLUS); break;
-      case ';': addToken(SEMICOLON); break;
-      case '*': addToken(STAR); break;
+      case '(': return LEFT_PAREN;
+      case ')': return RIGHT_PAREN;
+      case '{': return LEFT_BRACE;
+      case '}': return RIGHT_BRACE;
+      case ',': return COMMA;
+      case '.': return DOT;
+      case '-': return MINUS;
+      case '+': return PLUS;
+      case ';': return SEMICOLON;
+      case '*': return STAR;
       case '!':
-        addToken(match('=') ? BANG_EQUAL : BANG);
-        break;
+        return match('=') ? BANG_EQUAL : BANG;
       case '=':
-        addToken(match('=') ? EQUAL_EQUAL : EQUAL);
-        break;
+        return match('=') ? EQUAL_EQUAL : EQUAL;
       case '<':
-        addToken(match('=') ? LESS_EQUAL : LESS);
-        break;
+        return match('=') ? LESS_EQUAL : LESS;
       case '>':
-        addToken(match('=') ? GREATER_EQUAL : GREATER);
-        break;
+        return match('=') ? GREATER_EQUAL : GREATER;
       case '/':
         if (match('/')) {
           while(peek() != '\n' && isNotAtEnd()) { advance(); }
+          return null;
         }
         else {
-          addToken(SLASH);
+          return SLASH;
         }
-        break;
 
       case ' ':
       case '\r':
       case '\t':
-        break;
+        return null;
       case '\n':
         ++line;
-        break;
+        return null;
 
-      case '"': string(); break;
+      case '"': return string();
 
       default:
         if (isDigit(c)) {
-          number();
+          return number();
         }
         else if (isAlpha(c)) {
-          identifier();
+          return identifier();
         }
         else {
-          Luca.error(line, "Unexpected character.");
+          reporter.error(line, "Unexpected character.");
+          return null;
         }
     }
   }
@@ -127,23 +184,23 @@ class Scanner {
     }
   }
 
-  private void string() {
+  private TokenType string() {
     while (peek() != '"' && isNotAtEnd()) {
       if (peek() == '\n') { ++line; }
       advance();
     }
 
     if (isAtEnd()) {
-      Luca.error(line, "Unterminated string.");
-      return;
+      reporter.error(line, "Unterminated string.");
+      return null;
     }
 
     advance(); // consume the closing '"' character
 
-    addToken(STRING, source.substring(start + 1, current - 1));
+    return STRING;
   }
 
-  private void number() {
+  private TokenType number() {
     while (isDigit(peek())) { advance(); }
 
     if (peek() == '.' && isDigit(peekNext())) {
@@ -151,24 +208,37 @@ class Scanner {
       while (isDigit(peek())) { advance(); }
     }
 
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    return NUMBER;
   }
 
-  private void identifier() {
-    while (isAlphaNumeric(peek())) { advance(); }
-
-    String text = source.substring(start, current);
-
-    addToken(keywords.getOrDefault(text, IDENTIFIER));
+  // Up to 15 digits fit a double exactly, and so does 10^k for k <= 22, so
+  // one division gives the correctly rounded value without copying the text
+  // out. Longer numbers go through Double.parseDouble.
+  private static double parseNumber(CharSequence source, int start, int end) {
+    long digits = 0;
+    int count = 0;
+    int fractionDigits = 0;
+    boolean fraction = false;
+    for (int i = start; i < end; ++i) {
+      char c = source.charAt(i);
+      if (c == '.') {
+        fraction = true;
+        continue;
+      }
+      digits = digits * 10 + (c - '0');
+      ++count;
+      if (fraction) { ++fractionDigits; }
+      if (count > MAX_EXACT_DIGITS) {
+        return Double.parseDouble(source.subSequence(start, end).toString());
+      }
+    }
+    return digits / POWERS_OF_TEN[fractionDigits];
   }
 
-  private void addToken(TokenType tokenType) {
-    addToken(tokenType, null);
-  }
+  private TokenType identifier() {
+    while (isAlphaNumeric(peek())) { advance(); }
 
-  private void addToken(TokenType tokenType, Object literal) {
-    String text = source.substring(start, current);
-    tokens.add(new Token(tokenType, text, literal, line));
+    return symbols.type(symbols.intern(source, start, current));
   }
 
   private boolean isDigit(char c) {
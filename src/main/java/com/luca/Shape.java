@@ -0,0 +1,41 @@
+package com.luca;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Layout shared by every instance that gained the same fields in the same
+// order. Each class owns a root shape; adding a field follows a cached
+// transition to the next shape, so instances built alike end up sharing one.
+// A shape's slots never change once built; adding transitions is locked,
+// since instances of one class can gain fields on several threads at once.
+class Shape {
+	private final Map<String, Integer> slots;
+	private final Map<String, Shape> transitions = new HashMap<>();
+
+	Shape() {
+		this.slots = Map.of();
+	}
+
+	private Shape(Shape parent, String name) {
+		this.slots = new HashMap<>(parent.slots);
+		this.slots.put(name, parent.size());
+	}
+
+	int slotOf(String name) {
+		Integer slot = slots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	synchronized Shape withField(String name) {
+		Shape next = transitions.get(name);
+		if (next == null) {
+			next = new Shape(this, name);
+			transitions.put(name, next);
+		}
+		return next;
+	}
+
+	int size() {
+		return slots.size();
+	}
+}
@@ -8,7 +8,9 @@ abstract class Stmt {
 
 	interface Visitor<R> {
 		R visitBlockStmt(Block stmt);
+		R visitBreakStmt(Break stmt);
 		R visitClassStmt(Class stmt);
+		R visitContinueStmt(Continue stmt);
 		R visitExpressionStmt(Expression stmt);
 		R visitFunctionStmt(Function stmt);
 		R visitIfStmt(If stmt);
@@ -23,6 +25,7 @@ abstract class Stmt {
 	@RequiredArgsConstructor
 	static class Block extends Stmt {
 		final List<Stmt> statements;
+		int slotCount = 0;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -30,10 +33,21 @@ abstract class Stmt {
 		}
 	}
 
+	@RequiredArgsConstructor
+	static class Break extends Stmt {
+		final Token keyword;
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitBreakStmt(this);
+		}
+	}
+
 	@RequiredArgsConstructor
 	static class Class extends Stmt {
 		final Token name;
 		final List<Stmt.Function> methods;
+		int slot = -1;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -41,6 +55,16 @@ abstract class Stmt {
 		}
 	}
 
+	@RequiredArgsConstructor
+	static class Continue extends Stmt {
+		final Token keyword;
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitContinueStmt(this);
+		}
+	}
+
 	@RequiredArgsConstructor
 	static class Expression extends Stmt {
 		final Expr expression;
@@ -51,11 +75,30 @@ abstract class Stmt {
 		}
 	}
 
-	@RequiredArgsConstructor
 	static class Function extends Stmt {
 		final Token name;
 		final List<Token> params;
-		final List<Stmt> body;
+		// null while a lazily parsed body is still only a token range; body is
+		// set before lazyBody is cleared, so a thread that sees no lazyBody
+		// also sees the compiled body
+		List<Stmt> body;
+		volatile LazyBody lazyBody;
+		// slot of the function's own name in the declaring scope, -1 for globals
+		int slot = -1;
+		// size of the frame holding the parameters and top-level body locals
+		int slotCount = 0;
+
+		Function(Token name, List<Token> params, List<Stmt> body) {
+			this.name = name;
+			this.params = params;
+			this.body = body;
+		}
+
+		Function(Token name, List<Token> params, LazyBody lazyBody) {
+			this.name = name;
+			this.params = params;
+			this.lazyBody = lazyBody;
+		}
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -100,6 +143,7 @@ abstract class Stmt {
 	static class Var extends Stmt {
 		final Token name;
 		final Expr initializer;
+		int slot = -1;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -111,6 +155,8 @@ abstract class Stmt {
 	static class While extends Stmt {
 		final Expr condition;
 		final Stmt body;
+		// run after the body and on 'continue'; only set by desugared for loops
+		final Expr increment;
 
 		@Override
 		<R> R accept(Visitor<R> visitor) {
@@ -0,0 +1,288 @@
+package com.luca;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+abstract class StmtNode extends Node {
+	abstract Completion execute(Environment frame);
+
+	static Completion executeAll(StmtNode[] statements, Environment frame) {
+		for (StmtNode statement : statements) {
+			Completion completion = statement.execute(frame);
+			if (completion != Completion.NORMAL) { return completion; }
+		}
+		return Completion.NORMAL;
+	}
+
+	// One or two statements run from a node of their own rather than the
+	// shared loop in executeAll.
+	static StmtNode sequence(StmtNode[] statements) {
+		switch (statements.length) {
+			case 1: return statements[0];
+			case 2: return new Sequence(statements[0], statements[1]);
+			default: return new Block(statements, 0);
+		}
+	}
+
+	static class Sequence extends StmtNode {
+		final StmtNode first;
+		final StmtNode second;
+
+		Sequence(StmtNode first, StmtNode second) {
+			this.first = adopt(first);
+			this.second = adopt(second);
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			Completion completion = first.execute(frame);
+			return completion != Completion.NORMAL ? completion : second.execute(frame);
+		}
+	}
+
+	// Declarations bind into the frame slot chosen by the Resolver, or into
+	// globals when the Resolver left the declaration unresolved.
+	abstract static class Declaration extends StmtNode {
+		final Token name;
+		final int slot;
+		final Map<String, Object> globals;
+
+		Declaration(Token name, int slot, Map<String, Object> globals) {
+			this.name = name;
+			this.slot = slot;
+			this.globals = globals;
+		}
+
+		void define(Environment frame, Object value) {
+			if (slot == -1) {
+				globals.put(name.lexeme(), value);
+			}
+			else {
+				frame.define(slot, value);
+			}
+		}
+	}
+
+	static class Expression extends StmtNode {
+		ExprNode expression;
+
+		Expression(ExprNode expression) {
+			this.expression = adopt(expression);
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			expression.executeVoid(frame);
+			return Completion.NORMAL;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (expression == oldChild) { expression = (ExprNode) newChild; }
+		}
+	}
+
+	static class Print extends StmtNode {
+		private final PrintStream out;
+		ExprNode expression;
+
+		Print(PrintStream out, ExprNode expression) {
+			this.out = out;
+			this.expression = adopt(expression);
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			out.println(Interpreter.stringify(expression.execute(frame)));
+			return Completion.NORMAL;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (expression == oldChild) { expression = (ExprNode) newChild; }
+		}
+	}
+
+	static class Var extends Declaration {
+		ExprNode initializer;
+		// locals start out stored unboxed until an initializer yields a non-number
+		private boolean speculateDouble = true;
+
+		Var(Token name, int slot, Map<String, Object> globals, ExprNode initializer) {
+			super(name, slot, globals);
+			this.initializer = adopt(initializer);
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			if (initializer == null) {
+				define(frame, null);
+			}
+			else if (slot != -1 && speculateDouble) {
+				try {
+					frame.defineDouble(slot, initializer.executeDouble(frame));
+				} catch (UnexpectedResult unexpected) {
+					speculateDouble = false;
+					define(frame, unexpected.result);
+				}
+			}
+			else {
+				define(frame, initializer.execute(frame));
+			}
+			return Completion.NORMAL;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (initializer == oldChild) { initializer = (ExprNode) newChild; }
+		}
+	}
+
+	static class Block extends StmtNode {
+		final StmtNode[] statements;
+		final int slotCount;
+
+		Block(StmtNode[] statements, int slotCount) {
+			this.statements = statements;
+			this.slotCount = slotCount;
+			for (StmtNode statement : statements) {
+				adopt(statement);
+			}
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			return executeAll(statements, slotCount == 0 ? frame : new Environment(frame, slotCount));
+		}
+	}
+
+	static class If extends StmtNode {
+		ExprNode condition;
+		final StmtNode thenBranch;
+		final StmtNode elseBranch;
+
+		If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+			this.condition = adopt(condition);
+			this.thenBranch = adopt(thenBranch);
+			this.elseBranch = adopt(elseBranch);
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			if (Interpreter.isTruthy(condition.execute(frame))) {
+				return thenBranch.execute(frame);
+			}
+			else if (elseBranch != null) {
+				return elseBranch.execute(frame);
+			}
+			return Completion.NORMAL;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (condition == oldChild) { condition = (ExprNode) newChild; }
+		}
+	}
+
+	static class While extends StmtNode {
+		ExprNode condition;
+		final StmtNode body;
+		ExprNode increment;
+
+		While(ExprNode condition, StmtNode body, ExprNode increment) {
+			this.condition = adopt(condition);
+			this.body = adopt(body);
+			this.increment = adopt(increment);
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			while (Interpreter.isTruthy(condition.execute(frame))) {
+				Completion completion = body.execute(frame);
+				if (completion == Completion.BREAK) { break; }
+				if (completion.kind == Completion.Kind.RETURN) { return completion; }
+
+				if (increment != null) {
+					increment.executeVoid(frame);
+				}
+			}
+			return Completion.NORMAL;
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (condition == oldChild) { condition = (ExprNode) newChild; }
+			if (increment == oldChild) { increment = (ExprNode) newChild; }
+		}
+	}
+
+	static class Return extends StmtNode {
+		ExprNode value;
+
+		Return(ExprNode value) {
+			this.value = adopt(value);
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			return Completion.returning(value == null ? null : value.execute(frame));
+		}
+
+		@Override
+		void replaceChild(Node oldChild, Node newChild) {
+			if (value == oldChild) { value = (ExprNode) newChild; }
+		}
+	}
+
+	static class Break extends StmtNode {
+		@Override
+		Completion execute(Environment frame) {
+			return Completion.BREAK;
+		}
+	}
+
+	static class Continue extends StmtNode {
+		@Override
+		Completion execute(Environment frame) {
+			return Completion.CONTINUE;
+		}
+	}
+
+	static class Function extends Declaration {
+		final FunctionNode function;
+
+		Function(Token name, int slot, Map<String, Object> globals, FunctionNode function) {
+			super(name, slot, globals);
+			this.function = function;
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			define(frame, new NodeFunction(function, frame));
+			return Completion.NORMAL;
+		}
+	}
+
+	static class Class extends Declaration {
+		final FunctionNode[] methods;
+
+		Class(Token name, int slot, Map<String, Object> globals, FunctionNode[] methods) {
+			super(name, slot, globals);
+			this.methods = methods;
+		}
+
+		@Override
+		Completion execute(Environment frame) {
+			define(frame, null);
+
+			Map<String, LucaCallable> functions = new HashMap<>();
+			for (FunctionNode method : methods) {
+				functions.put(method.name, new NodeFunction(method, frame));
+			}
+
+			define(frame, new LucaClass(name.lexeme(), functions));
+			return Completion.NORMAL;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.luca;
+
+import java.util.Map;
+
+// Interns identifiers straight from the source text, so a name that was seen
+// before costs a hash and a compare instead of a new String. Keywords are
+// entered up front with their token types, which lets the same lookup
+// classify them.
+class SymbolTable {
+	private String[] names = new String[64];
+	private TokenType[] types = new TokenType[64];
+	private int size = 0;
+
+	SymbolTable(Map<String, TokenType> keywords) {
+		for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+			String name = keyword.getKey();
+			int index = find(name, 0, name.length(), hash(name, 0, name.length()));
+			insert(index, name, keyword.getValue());
+		}
+	}
+
+	// Returns the entry for source[start, end), adding it as an identifier if new.
+	int intern(CharSequence source, int start, int end) {
+		int hash = hash(source, start, end);
+		int index = find(source, start, end, hash);
+		if (names[index] == null) {
+			insert(index, source.subSequence(start, end).toString(), TokenType.IDENTIFIER);
+			index = find(source, start, end, hash);
+		}
+		return index;
+	}
+
+	String name(int entry) {
+		return names[entry];
+	}
+
+	TokenType type(int entry) {
+		return types[entry];
+	}
+
+	private int find(CharSequence source, int start, int end, int hash) {
+		int mask = names.length - 1;
+		int index = hash & mask;
+		while (names[index] != null && !matches(names[index], source, start, end)) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private void insert(int index, String name, TokenType type) {
+		names[index] = name;
+		types[index] = type;
+		if (++size * 2 > names.length) { grow(); }
+	}
+
+	private void grow() {
+		String[] oldNames = names;
+		TokenType[] oldTypes = types;
+		names = new String[oldNames.length * 2];
+		types = new TokenType[oldNames.length * 2];
+		for (int i = 0; i < oldNames.length; ++i) {
+			String name = oldNames[i];
+			if (name == null) { continue; }
+
+			int index = find(name, 0, name.length(), hash(name, 0, name.length()));
+			names[index] = name;
+			types[index] = oldTypes[i];
+		}
+	}
+
+	private static boolean matches(String name, CharSequence source, int start, int end) {
+		if (name.length() != end - start) { return false; }
+		for (int i = 0; i < name.length(); ++i) {
+			if (name.charAt(i) != source.charAt(start + i)) { return false; }
+		}
+		return true;
+	}
+
+	private static int hash(CharSequence source, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; ++i) {
+			hash = 31 * hash + source.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
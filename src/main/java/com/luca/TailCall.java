@@ -0,0 +1,13 @@
+package com.luca;
+
+// A pending call to a Luca function made in tail position, returned in place
+// of its result. Never visible to scripts: LucaFunction's trampoline runs it.
+final class TailCall {
+	final LucaFunction function;
+	final Object[] arguments;
+
+	TailCall(LucaFunction function, Object[] arguments) {
+		this.function = function;
+		this.arguments = arguments;
+	}
+}
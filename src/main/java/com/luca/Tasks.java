@@ -0,0 +1,138 @@
+package com.luca;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+// spawn(fn) starts a function of no arguments on a thread of its own and
+// returns a task; await(task) waits for it and returns what the function
+// returned, or rethrows its runtime error. A task runs on a fork of the
+// interpreter that spawned it: its own environment, inline caches and JIT
+// accounting, but the same globals and output. Tree-walker only.
+//
+// Tasks get virtual threads when the JVM has them, and daemon platform
+// threads otherwise, so a script that never awaits a task doesn't keep the
+// process alive. A task that fails before anyone awaits it is parked in its
+// interpreter's unawaited set, and once the program that spawned it is done
+// the Context fails the run with its error, rather than the error going
+// nowhere.
+final class Tasks {
+	private static final ExecutorService THREADS = threads();
+
+	static final LucaCallable SPAWN = new LucaCallable() {
+		@Override
+		public int arity() {
+			return 1;
+		}
+
+		@Override
+		public Object call(Interpreter interpreter, List<Object> arguments) {
+			Object callee = arguments.get(0);
+			if (!(callee instanceof LucaCallable) || ((LucaCallable) callee).arity() != 0) {
+				throw new RuntimeError("Can only spawn functions that take no arguments.");
+			}
+
+			LucaCallable function = (LucaCallable) callee;
+			Interpreter fork = interpreter.fork();
+			Task task = new Task(() -> function.call0(fork), interpreter.unawaited);
+			THREADS.execute(task);
+			return task;
+		}
+
+		@Override
+		public String toString() {
+			return "<native fn>";
+		}
+	};
+
+	static final LucaCallable AWAIT = new LucaCallable() {
+		@Override
+		public int arity() {
+			return 1;
+		}
+
+		@Override
+		public Object call(Interpreter interpreter, List<Object> arguments) {
+			Object task = arguments.get(0);
+			if (!(task instanceof Task)) {
+				throw new RuntimeError("Can only await tasks.");
+			}
+			return ((Task) task).join();
+		}
+
+		@Override
+		public String toString() {
+			return "<native fn>";
+		}
+	};
+
+	static final class Task extends FutureTask<Object> {
+		private final Set<Task> unawaited;
+		private boolean awaited = false;
+		RuntimeError error = null;
+
+		Task(Callable<Object> body, Set<Task> unawaited) {
+			super(body);
+			this.unawaited = unawaited;
+		}
+
+		@Override
+		protected void setException(Throwable cause) {
+			super.setException(cause);
+			if (!(cause instanceof RuntimeError)) { return; }
+			synchronized (this) {
+				if (!awaited) {
+					error = (RuntimeError) cause;
+					unawaited.add(this);
+				}
+			}
+		}
+
+		// A task's runtime error keeps the line it happened on inside the task.
+		Object join() {
+			synchronized (this) {
+				awaited = true;
+				unawaited.remove(this);
+			}
+
+			try {
+				return get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+				if (cause instanceof Error) { throw (Error) cause; }
+				throw new IllegalStateException(cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeError("Interrupted while awaiting a task.");
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "<task>";
+		}
+	}
+
+	// Executors.newVirtualThreadPerTaskExecutor() is Java 21; the build
+	// targets 16, so it's looked up reflectively. On anything older, JDK 17
+	// included, every task is a platform thread from the cached pool: a task
+	// blocked in await, send or receive holds a whole thread, so thousands of
+	// blocked tasks cost thousands of threads. Nothing here has been measured
+	// on virtual threads.
+	private static ExecutorService threads() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "luca-task");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
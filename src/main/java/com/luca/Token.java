@@ -1,17 +1,42 @@
 package com.luca;
 
-import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.StringUtils;
 
-@RequiredArgsConstructor
 class Token {
   final TokenType type;
-  final String lexeme;
   final Object literal;
   final int line;
 
+  // Tokens the scanner couldn't give a shared String keep a view of their
+  // text in the source instead, copied out the first time it's asked for.
+  private final CharSequence source;
+  private final int start;
+  private final int length;
+  private String lexeme;
+
+  Token(TokenType type, String lexeme, Object literal, int line) {
+    this(type, null, 0, 0, literal, line);
+    this.lexeme = lexeme;
+  }
+
+  Token(TokenType type, CharSequence source, int start, int length, Object literal, int line) {
+    this.type = type;
+    this.source = source;
+    this.start = start;
+    this.length = length;
+    this.literal = literal;
+    this.line = line;
+  }
+
+  String lexeme() {
+    if (lexeme == null) {
+      lexeme = source.subSequence(start, start + length).toString();
+    }
+    return lexeme;
+  }
+
   @Override
   public String toString() {
-    return type + StringUtils.SPACE + lexeme + StringUtils.SPACE + literal;
+    return type + StringUtils.SPACE + lexeme() + StringUtils.SPACE + literal;
   }
 }
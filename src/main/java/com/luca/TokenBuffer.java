@@ -0,0 +1,92 @@
+package com.luca;
+
+import java.util.Arrays;
+
+// All of a source's tokens as parallel primitive arrays: type ordinal, offset
+// and length in the source, and line. That is 13 bytes a token instead of a
+// Token with its lexeme and boxed literal, and the parser's type checks read
+// one byte array. A Token is only made when the parser asks for one, for an
+// AST node or an error message.
+class TokenBuffer implements TokenCursor {
+	private static final TokenType[] TYPES = TokenType.values();
+
+	private final CharSequence source;
+	private final SymbolTable symbols;
+	private byte[] types;
+	private int[] starts;
+	private int[] lengths;
+	private int[] lines;
+	private int size = 0;
+	private int position = 0;
+
+	TokenBuffer(CharSequence source, SymbolTable symbols) {
+		this.source = source;
+		this.symbols = symbols;
+
+		// scripts average three to five characters a token
+		int capacity = Math.max(16, source.length() / 3);
+		types = new byte[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		lines = new int[capacity];
+	}
+
+	void add(TokenType type, int start, int length, int line) {
+		if (size == types.length) { grow(); }
+
+		types[size] = (byte) type.ordinal();
+		starts[size] = start;
+		lengths[size] = length;
+		lines[size] = line;
+		++size;
+	}
+
+	private void grow() {
+		int capacity = types.length * 2;
+		types = Arrays.copyOf(types, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		lines = Arrays.copyOf(lines, capacity);
+	}
+
+	int size() {
+		return size;
+	}
+
+	int position() {
+		return position;
+	}
+
+	void seek(int position) {
+		this.position = position;
+	}
+
+	TokenType type(int index) {
+		return TYPES[types[index]];
+	}
+
+	Token token(int index) {
+		int start = starts[index];
+		return Scanner.token(type(index), source, symbols, start, start + lengths[index], lines[index]);
+	}
+
+	@Override
+	public TokenType peekType() {
+		return type(position);
+	}
+
+	@Override
+	public Token peek() {
+		return token(position);
+	}
+
+	@Override
+	public Token previous() {
+		return token(position - 1);
+	}
+
+	@Override
+	public void advance() {
+		++position;
+	}
+}
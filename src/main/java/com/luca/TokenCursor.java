@@ -0,0 +1,10 @@
+package com.luca;
+
+// The Parser's view of its input: the current token, the one before it, and
+// a way to move on. Checking a type must not require a Token object.
+interface TokenCursor {
+	TokenType peekType();
+	Token peek();
+	Token previous();
+	void advance();
+}
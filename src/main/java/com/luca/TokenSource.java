@@ -0,0 +1,6 @@
+package com.luca;
+
+// Hands out tokens one at a time; after the last one it keeps returning EOF.
+interface TokenSource {
+	Token next();
+}
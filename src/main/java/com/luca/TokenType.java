@@ -2,21 +2,21 @@ package com.luca;
 
 enum TokenType {
   // Single-character tokens
-  LEFT_PAREN, RIGHT_PAREN,
-  LEFT_BRACE, RIGHT_BRACE,
-  COMMA,
-  DOT,
-  MINUS,
-  PLUS,
-  SEMICOLON,
-  SLASH,
-  STAR,
+  LEFT_PAREN("("), RIGHT_PAREN(")"),
+  LEFT_BRACE("{"), RIGHT_BRACE("}"),
+  COMMA(","),
+  DOT("."),
+  MINUS("-"),
+  PLUS("+"),
+  SEMICOLON(";"),
+  SLASH("/"),
+  STAR("*"),
 
   // One- or two-character tokens
-  BANG, BANG_EQUAL,
-  EQUAL, EQUAL_EQUAL,
-  GREATER, GREATER_EQUAL,
-  LESS, LESS_EQUAL,
+  BANG("!"), BANG_EQUAL("!="),
+  EQUAL("="), EQUAL_EQUAL("=="),
+  GREATER(">"), GREATER_EQUAL(">="),
+  LESS("<"), LESS_EQUAL("<="),
 
   // Literals
   IDENTIFIER,
@@ -25,7 +25,9 @@ enum TokenType {
 
   // Keywords
   AND,
+  BREAK,
   CLASS,
+  CONTINUE,
   ELSE,
   FALSE,
   FUNC,
@@ -41,5 +43,16 @@ enum TokenType {
   VAR,
   WHILE,
 
-  EOF
+  EOF("");
+
+  // the lexeme every token of this type has, null when it varies
+  final String text;
+
+  TokenType() {
+    this(null);
+  }
+
+  TokenType(String text) {
+    this.text = text;
+  }
 }
@@ -0,0 +1,38 @@
+package com.luca;
+
+// Pulls tokens from a TokenSource as the parser needs them. The parser never
+// looks further back than previous(), so only the current token and the one
+// before it are kept, in a two-slot ring indexed by position.
+class TokenWindow implements TokenCursor {
+	private static final int WINDOW = 2;
+
+	private final TokenSource tokens;
+	private final Token[] window = new Token[WINDOW];
+	private int position = 0;
+
+	TokenWindow(TokenSource tokens) {
+		this.tokens = tokens;
+		window[0] = tokens.next();
+	}
+
+	@Override
+	public TokenType peekType() {
+		return peek().type;
+	}
+
+	@Override
+	public Token peek() {
+		return window[position % WINDOW];
+	}
+
+	@Override
+	public Token previous() {
+		return window[(position - 1) % WINDOW];
+	}
+
+	@Override
+	public void advance() {
+		++position;
+		window[position % WINDOW] = tokens.next();
+	}
+}
@@ -0,0 +1,13 @@
+package com.luca;
+
+// Thrown by a specialized execute method (such as ExprNode.executeDouble) when
+// the value it produced does not fit the expected primitive type. Carries the
+// boxed value so the caller can continue generically without re-evaluating.
+class UnexpectedResult extends Exception {
+	final Object result;
+
+	UnexpectedResult(Object result) {
+		super(null, null, false, false);
+		this.result = result;
+	}
+}
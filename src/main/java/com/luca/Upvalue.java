@@ -0,0 +1,13 @@
+package com.luca;
+
+class Upvalue {
+	// Stack slot of the captured variable while it is still live, -1 once closed.
+	int slot;
+	Object closed;
+	Upvalue next;
+
+	Upvalue(int slot, Upvalue next) {
+		this.slot = slot;
+		this.next = next;
+	}
+}
@@ -0,0 +1,418 @@
+package com.luca;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class VM {
+	private static final int FRAMES_MAX = 1024;
+	private static final int STACK_MAX = FRAMES_MAX * 256;
+
+	private static class CallFrame {
+		Closure closure;
+		int ip;
+		int base;
+	}
+
+	private final Object[] stack = new Object[STACK_MAX];
+	private int sp = 0;
+	private final CallFrame[] frames = new CallFrame[FRAMES_MAX];
+	private int frameCount = 0;
+	private Upvalue openUpvalues = null;
+	private final Map<String, Object> globals = new HashMap<>();
+	private final PrintStream out;
+
+	VM(PrintStream out) {
+		this.out = out;
+		for (int i = 0; i < FRAMES_MAX; ++i) {
+			frames[i] = new CallFrame();
+		}
+		globals.put("clock", Interpreter.CLOCK);
+		globals.put("clockNanos", Interpreter.CLOCK_NANOS);
+	}
+
+	void interpret(CompiledFunction script) {
+		try {
+			Closure closure = new Closure(script);
+			push(closure);
+			callClosure(closure, 0, 0);
+			run();
+		} catch (RuntimeError error) {
+			resetStack();
+			throw error;
+		}
+	}
+
+	private void run() {
+		CallFrame frame = frames[frameCount - 1];
+		Chunk chunk = frame.closure.function.chunk;
+		byte[] code = chunk.code;
+		Object[] constants = chunk.constants;
+		int base = frame.base;
+		int ip = frame.ip;
+		Object[] stack = this.stack;
+		int sp = this.sp;
+
+		while (true) {
+			switch (code[ip++]) {
+				case OpCode.CONSTANT: {
+					stack[sp++] = constants[readShort(code, ip)];
+					ip += 2;
+					break;
+				}
+				case OpCode.NIL: stack[sp++] = null; break;
+				case OpCode.TRUE: stack[sp++] = true; break;
+				case OpCode.FALSE: stack[sp++] = false; break;
+				case OpCode.POP: --sp; break;
+
+				case OpCode.GET_LOCAL: stack[sp++] = stack[base + (code[ip++] & 0xff)]; break;
+				case OpCode.SET_LOCAL: stack[base + (code[ip++] & 0xff)] = stack[sp - 1]; break;
+				case OpCode.STORE_LOCAL: stack[base + (code[ip++] & 0xff)] = stack[--sp]; break;
+				case OpCode.GET_UPVALUE: {
+					Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+					stack[sp++] = upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed;
+					break;
+				}
+				case OpCode.SET_UPVALUE: {
+					Upvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+					if (upvalue.slot >= 0) {
+						stack[upvalue.slot] = stack[sp - 1];
+					}
+					else {
+						upvalue.closed = stack[sp - 1];
+					}
+					break;
+				}
+				case OpCode.GET_GLOBAL: {
+					Token name = (Token) constants[readShort(code, ip)];
+					ip += 2;
+					Object value = globals.get(name.lexeme());
+					if (value == null && !globals.containsKey(name.lexeme())) {
+						throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+					}
+					stack[sp++] = value;
+					break;
+				}
+				case OpCode.SET_GLOBAL: {
+					Token name = (Token) constants[readShort(code, ip)];
+					ip += 2;
+					// a single lookup unless the old value was nil
+					if (globals.replace(name.lexeme(), stack[sp - 1]) == null && !globals.containsKey(name.lexeme())) {
+						throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
+					}
+					break;
+				}
+				case OpCode.DEFINE_GLOBAL: {
+					Token name = (Token) constants[readShort(code, ip)];
+					ip += 2;
+					globals.put(name.lexeme(), stack[--sp]);
+					break;
+				}
+				case OpCode.GET_PROPERTY: {
+					Token name = (Token) constants[readShort(code, ip)];
+					ip += 2;
+					Object object = stack[sp - 1];
+					if (!(object instanceof LucaInstance)) {
+						throw new RuntimeError(name, "Only instances have properties.");
+					}
+					stack[sp - 1] = ((LucaInstance) object).get(name);
+					break;
+				}
+				case OpCode.SET_PROPERTY: {
+					Token name = (Token) constants[readShort(code, ip)];
+					ip += 2;
+					Object object = stack[sp - 2];
+					if (!(object instanceof LucaInstance)) {
+						throw new RuntimeError(name, "Only instances have fields.");
+					}
+					Object value = stack[--sp];
+					((LucaInstance) object).set(name, value);
+					stack[sp - 1] = value;
+					break;
+				}
+
+				case OpCode.EQUAL: {
+					Object right = stack[--sp];
+					stack[sp - 1] = Interpreter.isEqual(stack[sp - 1], right);
+					break;
+				}
+				case OpCode.NOT_EQUAL: {
+					Object right = stack[--sp];
+					stack[sp - 1] = !Interpreter.isEqual(stack[sp - 1], right);
+					break;
+				}
+				case OpCode.GREATER: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(left, right, chunk, ip);
+					stack[sp - 1] = (double) left > (double) right;
+					break;
+				}
+				case OpCode.GREATER_EQUAL: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(left, right, chunk, ip);
+					stack[sp - 1] = (double) left >= (double) right;
+					break;
+				}
+				case OpCode.LESS: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(left, right, chunk, ip);
+					stack[sp - 1] = (double) left < (double) right;
+					break;
+				}
+				case OpCode.LESS_EQUAL: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(left, right, chunk, ip);
+					stack[sp - 1] = (double) left <= (double) right;
+					break;
+				}
+				case OpCode.ADD: {
+					Object right = stack[sp - 1];
+					Object left = stack[sp - 2];
+					if (left instanceof Double && right instanceof Double) {
+						stack[sp - 2] = (double) left + (double) right;
+					}
+					else if (left instanceof String && right instanceof String) {
+						stack[sp - 2] = (String) left + (String) right;
+					}
+					else {
+						throw new RuntimeError(chunk.getLine(ip - 1), "Operands must be two numbers or two strings");
+					}
+					--sp;
+					break;
+				}
+				case OpCode.SUBTRACT: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(left, right, chunk, ip);
+					stack[sp - 1] = (double) left - (double) right;
+					break;
+				}
+				case OpCode.MULTIPLY: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(left, right, chunk, ip);
+					stack[sp - 1] = (double) left * (double) right;
+					break;
+				}
+				case OpCode.DIVIDE: {
+					Object right = stack[--sp];
+					Object left = stack[sp - 1];
+					checkNumberOperands(left, right, chunk, ip);
+					stack[sp - 1] = (double) left / (double) right;
+					break;
+				}
+				case OpCode.NOT: stack[sp - 1] = !Interpreter.isTruthy(stack[sp - 1]); break;
+				case OpCode.NEGATE: {
+					if (!(stack[sp - 1] instanceof Double)) {
+						throw new RuntimeError(chunk.getLine(ip - 1), "Operand must be a number.");
+					}
+					stack[sp - 1] = -(double) stack[sp - 1];
+					break;
+				}
+
+				case OpCode.PRINT: out.println(Interpreter.stringify(stack[--sp])); break;
+				case OpCode.JUMP: {
+					ip += readShort(code, ip) + 2;
+					break;
+				}
+				case OpCode.JUMP_IF_FALSE: {
+					int offset = readShort(code, ip);
+					ip += 2;
+					if (!Interpreter.isTruthy(stack[sp - 1])) { ip += offset; }
+					break;
+				}
+				case OpCode.JUMP_IF_TRUE: {
+					int offset = readShort(code, ip);
+					ip += 2;
+					if (Interpreter.isTruthy(stack[sp - 1])) { ip += offset; }
+					break;
+				}
+				case OpCode.POP_JUMP_IF_FALSE: {
+					int offset = readShort(code, ip);
+					ip += 2;
+					if (!Interpreter.isTruthy(stack[--sp])) { ip += offset; }
+					break;
+				}
+				case OpCode.LOOP_IF_TRUE: {
+					int offset = readShort(code, ip);
+					ip += 2;
+					if (Interpreter.isTruthy(stack[--sp])) { ip -= offset; }
+					break;
+				}
+				case OpCode.CALL: {
+					int argCount = code[ip++] & 0xff;
+					frame.ip = ip;
+					this.sp = sp;
+					callValue(stack[sp - argCount - 1], argCount, chunk.getLine(ip - 2));
+					sp = this.sp;
+
+					frame = frames[frameCount - 1];
+					chunk = frame.closure.function.chunk;
+					code = chunk.code;
+					constants = chunk.constants;
+					base = frame.base;
+					ip = frame.ip;
+					break;
+				}
+				case OpCode.CLOSURE: {
+					Closure closure = new Closure((CompiledFunction) constants[readShort(code, ip)]);
+					ip += 2;
+					for (int i = 0; i < closure.upvalues.length; ++i) {
+						boolean isLocal = code[ip++] == 1;
+						int index = code[ip++] & 0xff;
+						closure.upvalues[i] = isLocal ? captureUpvalue(base + index) : frame.closure.upvalues[index];
+					}
+					stack[sp++] = closure;
+					break;
+				}
+				case OpCode.CLOSE_UPVALUE: {
+					closeUpvalues(sp - 1);
+					--sp;
+					break;
+				}
+				case OpCode.RETURN: {
+					Object result = stack[--sp];
+					closeUpvalues(base);
+					--frameCount;
+					if (frameCount == 0) {
+						resetStack();
+						return;
+					}
+
+					sp = base;
+					stack[sp++] = result;
+
+					frame = frames[frameCount - 1];
+					chunk = frame.closure.function.chunk;
+					code = chunk.code;
+					constants = chunk.constants;
+					base = frame.base;
+					ip = frame.ip;
+					break;
+				}
+				case OpCode.CLASS: {
+					String name = (String) constants[readShort(code, ip)];
+					ip += 2;
+					stack[sp++] = new LucaClass(name, new HashMap<>());
+					break;
+				}
+				case OpCode.METHOD: {
+					String name = (String) constants[readShort(code, ip)];
+					ip += 2;
+					LucaClass klass = (LucaClass) stack[sp - 2];
+					klass.defineMethod(name, (Closure) stack[--sp]);
+					break;
+				}
+			}
+		}
+	}
+
+	private void callValue(Object callee, int argCount, int line) {
+		if (!(callee instanceof LucaCallable)) {
+			throw new RuntimeError(line, "Can only call functions and classes.");
+		}
+
+		LucaCallable function = (LucaCallable) callee;
+		if (argCount != function.arity()) {
+			throw new RuntimeError(line, "Expected " + function.arity() + " arguments but got "
+			+ argCount + ".");
+		}
+
+		if (function instanceof Closure) {
+			callClosure((Closure) function, argCount, line);
+			return;
+		}
+
+		// Classes and natives are the only other callables the VM creates.
+		Object result;
+		if (function instanceof LucaClass) {
+			result = new LucaInstance((LucaClass) function);
+		}
+		else if (function instanceof Native) {
+			result = ((Native) function).call(Arrays.copyOfRange(stack, sp - argCount, sp));
+		}
+		else {
+			throw new RuntimeError(line, "Can only call functions and classes.");
+		}
+		sp -= argCount + 1;
+		push(result);
+	}
+
+	private void callClosure(Closure closure, int argCount, int line) {
+		if (frameCount == FRAMES_MAX) {
+			throw new RuntimeError(line, "Stack overflow.");
+		}
+
+		CallFrame frame = frames[frameCount++];
+		frame.closure = closure;
+		frame.ip = 0;
+		frame.base = sp - argCount - 1;
+	}
+
+	private Upvalue captureUpvalue(int slot) {
+		Upvalue previous = null;
+		Upvalue upvalue = openUpvalues;
+		while (upvalue != null && upvalue.slot > slot) {
+			previous = upvalue;
+			upvalue = upvalue.next;
+		}
+
+		if (upvalue != null && upvalue.slot == slot) {
+			return upvalue;
+		}
+
+		Upvalue created = new Upvalue(slot, upvalue);
+		if (previous == null) {
+			openUpvalues = created;
+		}
+		else {
+			previous.next = created;
+		}
+		return created;
+	}
+
+	private void closeUpvalues(int last) {
+		while (openUpvalues != null && openUpvalues.slot >= last) {
+			Upvalue upvalue = openUpvalues;
+			upvalue.closed = stack[upvalue.slot];
+			upvalue.slot = -1;
+			openUpvalues = upvalue.next;
+		}
+	}
+
+	private static void checkNumberOperands(Object left, Object right, Chunk chunk, int ip) {
+		if (!(left instanceof Double && right instanceof Double)) {
+			throw new RuntimeError(chunk.getLine(ip - 1), "Operands must be numbers");
+		}
+	}
+
+	private static int readShort(byte[] code, int ip) {
+		return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+	}
+
+	private void push(Object value) {
+		stack[sp++] = value;
+	}
+
+	private Object pop() {
+		return stack[--sp];
+	}
+
+	// Also after a normal return, so nothing the script left on the stack or
+	// in a frame stays reachable from the VM. run() keeps its stack pointer in
+	// a local, so the field may be behind; clear the whole stack.
+	private void resetStack() {
+		Arrays.fill(stack, null);
+		for (CallFrame frame : frames) {
+			frame.closure = null;
+		}
+		sp = 0;
+		frameCount = 0;
+		openUpvalues = null;
+	}
+}